@@ -1,27 +1,47 @@
 package fabzo.kraken;
 
+import fabzo.kraken.components.DockerComponent;
 import fabzo.kraken.components.InfrastructureComponent;
 import fabzo.kraken.handler.LifecycleHandler;
+import fabzo.kraken.logs.IndexedLogStore;
+import fabzo.kraken.logs.LogLine;
+import fabzo.kraken.logs.LogPipeline;
+import fabzo.kraken.logs.LogSink;
+import fabzo.kraken.logs.Slf4jLogSink;
 import fabzo.kraken.utils.ShutdownHookManager;
 import fabzo.kraken.utils.Utils;
+import fabzo.kraken.wait.ReadinessScheduler;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.apache.commons.lang.RandomStringUtils;
 import org.apache.commons.lang3.StringUtils;
 
+import java.time.Instant;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import static fabzo.kraken.utils.Utils.nameOf;
 
 @Slf4j
 public class Environment {
     private final EnvironmentModule module;
     private final EnvironmentContext context;
+    private final Option<IndexedLogStore> logStore;
 
     public Environment(final EnvironmentModule module) {
         this.module = module;
 
         val salt = RandomStringUtils.randomAlphabetic(8).toLowerCase();
         log.info("Using environment salt {}", salt);
-        this.context = new EnvironmentContext(salt);
+        this.logStore = module.configuration().logStore().map(IndexedLogStore::new);
+        this.context = new EnvironmentContext(salt,
+                newLogPipeline(module.configuration()),
+                new ReadinessScheduler(module.configuration().readinessThreads()));
 
         setupEnvironment();
     }
@@ -31,22 +51,109 @@ public class Environment {
         registerShutdownHook();
     }
 
+    /**
+     * Fallback for environments that are not stopped explicitly.
+     */
     private void registerShutdownHook() {
-        ShutdownHookManager.addHook(1000, () -> context.shutdownHooks().forEach(Runnable::run));
+        ShutdownHookManager.addHook(1000, () -> {
+            context.closeDataSources();
+            teardown().run(context.shutdownHooks());
+            context.readiness().close();
+            context.logs().close();
+        });
+    }
+
+    private LogPipeline newLogPipeline(final EnvironmentConfiguration configuration) {
+        val sinks = configuration.logSinks().isEmpty()
+                ? List.<LogSink>of(new Slf4jLogSink())
+                : configuration.logSinks();
+
+        return new LogPipeline(sinks, List.<LogSink>ofAll(logStore), configuration.logBufferSize(), configuration.logOverflowStrategy());
     }
 
     public void start() {
+        prepare();
+
+        val configuration = module.configuration();
+        configuration.hostBudget().forEach(this::admit);
+
         log.info("Starting all components of {}", nameOf(module));
-        module.components().forEach(this::start);
+        context.setStartupBudget(configuration.startupBudget());
+        try {
+            new StartupScheduler(module.components(), configuration.startupParallelism(), configuration.startupBudget())
+                    .run(this::run);
+        } catch (final RuntimeException e) {
+            // Stop waiting for the components that are still starting
+            context.readiness().cancelAll();
+            throw e;
+        } finally {
+            context.setStartupBudget(Option.none());
+        }
+    }
+
+    /**
+     * Waits until the resources declared by all components fit into the budget. The environment
+     * holds them until it is stopped, also when starting it failed, as some of its components may
+     * be running. Waiting is limited by the startup budget if one is configured.
+     */
+    private void admit(final HostBudget hostBudget) {
+        val dockerComponents = module.components()
+                .filter(DockerComponent.class::isInstance)
+                .map(DockerComponent.class::cast);
+        val cpus = dockerComponents.map(dockerC -> dockerC.cpus().getOrElse(0.0)).sum().doubleValue();
+        val memory = dockerComponents.map(dockerC -> dockerC.memory().getOrElse(0L)).sum().longValue();
+        if (cpus == 0 && memory == 0) {
+            return;
+        }
+
+        val key = budgetKey();
+        val admitted = hostBudget.admit(key, cpus, memory);
+        val startupBudget = module.configuration().startupBudget();
+        try {
+            if (startupBudget.isDefined()) {
+                admitted.get(startupBudget.get().toNanos(), TimeUnit.NANOSECONDS);
+            } else {
+                admitted.get();
+            }
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException(e.getCause().getMessage(), e.getCause());
+        } catch (final TimeoutException e) {
+            hostBudget.release(key);
+            throw new IllegalStateException(String.format(
+                    "Resources for %s did not become available within the startup budget of %s",
+                    nameOf(module), startupBudget.get()));
+        } catch (final InterruptedException e) {
+            hostBudget.release(key);
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for resources for " + nameOf(module), e);
+        }
+    }
+
+    /**
+     * Lets every handler prepare all of its components before any of them is started.
+     */
+    private void prepare() {
+        module.components()
+                .groupBy(this::handlerFor)
+                .forEach((handler, components) -> handler.prepare(components, context));
     }
 
-    private void start(final InfrastructureComponent component) {
+    private CompletableFuture<Boolean> run(final InfrastructureComponent component, final Executor executor) {
+        val handler = handlerFor(component);
+        log.info("Starting {} using {}", component.name(), readableHandlerName(handler));
+        return handler.runAsync(component, context, executor).ready();
+    }
+
+    private String budgetKey() {
+        return nameOf(module) + "_" + context.salt();
+    }
+
+    private LifecycleHandler handlerFor(final InfrastructureComponent component) {
         val handler = module.handlers().find(h -> h.canRun(component.getClass()));
         if (handler.isEmpty()) {
             throw new IllegalStateException("Could not find handler for " + component.name());
         }
-        log.info("Starting {} using {}", component.name(), readableHandlerName(handler.get()));
-        handler.get().run(component, context);
+        return handler.get();
     }
 
     private String readableHandlerName(final LifecycleHandler handler) {
@@ -54,17 +161,40 @@ public class Environment {
         return String.join(" ", words).toLowerCase();
     }
 
-    private void stop(final InfrastructureComponent component) {
-        val handler = module.handlers().find(h -> h.canRun(component.getClass()));
-        if (handler.isEmpty()) {
-            throw new IllegalStateException("Could not find handler for " + component.name());
+    /**
+     * Stops all components and releases the readiness threads and the log pipeline, the
+     * environment can not be started again afterwards.
+     */
+    public void stop() {
+        log.info("Stopping all components of {}", nameOf(module));
+        context.closeDataSources();
+        try {
+            val failed = teardown().runAsync(module.components().map(component ->
+                    executor -> handlerFor(component).stopAsync(component, context, executor)));
+            if (failed > 0) {
+                throw new IllegalStateException("Failed to stop " + failed + " component(s) of " + nameOf(module));
+            }
+        } finally {
+            module.configuration().hostBudget().forEach(hostBudget -> hostBudget.release(budgetKey()));
+            context.readiness().close();
+            context.logs().close();
         }
-        handler.get().stop(component, context);
     }
 
-    public void stop() {
-        log.info("Stopping all components of {}", nameOf(module));
-        module.components().forEach(this::stop);
+    private Teardown teardown() {
+        val configuration = module.configuration();
+        return new Teardown(configuration.shutdownParallelism(), configuration.shutdownDeadline());
+    }
+
+    /**
+     * Returns the lines the component logged between from and to (both inclusive).
+     * Requires a log store to be configured on the {@link EnvironmentConfiguration}.
+     */
+    public List<LogLine> logs(final String component, final Instant from, final Instant to) {
+        if (logStore.isEmpty()) {
+            throw new IllegalStateException("No log store configured for " + nameOf(module));
+        }
+        return logStore.get().read(component, from, to);
     }
 
     public EnvironmentContext context() {
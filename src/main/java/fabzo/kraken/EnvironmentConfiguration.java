@@ -0,0 +1,195 @@
+package fabzo.kraken;
+
+import fabzo.kraken.logs.LogSink;
+import fabzo.kraken.logs.OverflowStrategy;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Environment wide configuration. Can be registered inside an {@link EnvironmentModule}
+ * to change how components are orchestrated.
+ */
+public class EnvironmentConfiguration {
+    private int startupParallelism = 1;
+    private int shutdownParallelism = 1;
+    private Option<Duration> shutdownDeadline = Option.none();
+    private List<LogSink> logSinks = List.empty();
+    private int logBufferSize = 4096;
+    private OverflowStrategy logOverflowStrategy = OverflowStrategy.DROP_OLDEST;
+    private Option<Path> logStore = Option.none();
+    private int readinessThreads = 2;
+    private Option<Duration> startupBudget = Option.none();
+    private Option<HostBudget> hostBudget = Option.none();
+
+    public static EnvironmentConfiguration create() {
+        return new EnvironmentConfiguration();
+    }
+
+    public int startupParallelism() {
+        return startupParallelism;
+    }
+
+    /**
+     * Maximum number of components that are started concurrently. A component is only
+     * started once all components it depends on (explicitly or through port and IP references
+     * in its environment) have been created and are ready.
+     * <br>
+     * Default: 1 (components are started one after another)
+     */
+    public EnvironmentConfiguration withStartupParallelism(final int startupParallelism) {
+        if (startupParallelism < 1) {
+            throw new IllegalArgumentException("Startup parallelism must be at least 1");
+        }
+        this.startupParallelism = startupParallelism;
+        return this;
+    }
+
+    public int shutdownParallelism() {
+        return shutdownParallelism;
+    }
+
+    /**
+     * Maximum number of components that are stopped and removed concurrently, both
+     * when stopping the environment and in the shutdown hook.
+     * <br>
+     * Default: 1 (components are stopped one after another)
+     */
+    public EnvironmentConfiguration withShutdownParallelism(final int shutdownParallelism) {
+        if (shutdownParallelism < 1) {
+            throw new IllegalArgumentException("Shutdown parallelism must be at least 1");
+        }
+        this.shutdownParallelism = shutdownParallelism;
+        return this;
+    }
+
+    public Option<Duration> shutdownDeadline() {
+        return shutdownDeadline;
+    }
+
+    /**
+     * Time that stopping all components may take in total. Components that have not been
+     * stopped once the deadline passed are abandoned and reported.
+     * <br>
+     * Default: none (wait for all components to stop)
+     */
+    public EnvironmentConfiguration withShutdownDeadline(final Duration shutdownDeadline) {
+        this.shutdownDeadline = Option.of(shutdownDeadline);
+        return this;
+    }
+
+    public List<LogSink> logSinks() {
+        return logSinks;
+    }
+
+    /**
+     * Adds a sink that receives the logs of all components following their logs.
+     * <br>
+     * Default: none (logs are written to SLF4J)
+     */
+    public EnvironmentConfiguration withLogSink(final LogSink logSink) {
+        this.logSinks = logSinks.append(logSink);
+        return this;
+    }
+
+    public int logBufferSize() {
+        return logBufferSize;
+    }
+
+    /**
+     * Number of log lines buffered per component before the overflow strategy applies.
+     * <br>
+     * Default: 4096
+     */
+    public EnvironmentConfiguration withLogBufferSize(final int logBufferSize) {
+        if (logBufferSize < 1) {
+            throw new IllegalArgumentException("Log buffer size must be at least 1");
+        }
+        this.logBufferSize = logBufferSize;
+        return this;
+    }
+
+    public OverflowStrategy logOverflowStrategy() {
+        return logOverflowStrategy;
+    }
+
+    /**
+     * What happens when a component logs faster than the sinks can write.
+     * <br>
+     * Default: DROP_OLDEST
+     */
+    public EnvironmentConfiguration withLogOverflowStrategy(final OverflowStrategy logOverflowStrategy) {
+        this.logOverflowStrategy = logOverflowStrategy;
+        return this;
+    }
+
+    public Option<Path> logStore() {
+        return logStore;
+    }
+
+    /**
+     * Directory to keep the complete logs of all components in. Stored logs can be queried
+     * by time window through {@link Environment#logs}, e.g. to report the lines a component
+     * logged during a failed test. Logs of earlier runs in the same directory are appended to.
+     * <br>
+     * Default: none (logs are not stored)
+     */
+    public EnvironmentConfiguration withLogStore(final Path directory) {
+        this.logStore = Option.of(directory);
+        return this;
+    }
+
+    public int readinessThreads() {
+        return readinessThreads;
+    }
+
+    /**
+     * Number of threads the attempts of all wait functions are scheduled on. Waits do not
+     * occupy a thread between their attempts.
+     * <br>
+     * Default: 2
+     */
+    public EnvironmentConfiguration withReadinessThreads(final int readinessThreads) {
+        if (readinessThreads < 1) {
+            throw new IllegalArgumentException("Readiness threads must be at least 1");
+        }
+        this.readinessThreads = readinessThreads;
+        return this;
+    }
+
+    public Option<Duration> startupBudget() {
+        return startupBudget;
+    }
+
+    /**
+     * Time starting all components may take in total. Every wait function is limited to the
+     * remaining budget. Once the budget is used up or a component failed to start, all
+     * outstanding waits are cancelled.
+     * <br>
+     * Default: none (only the limits of the individual wait functions apply)
+     */
+    public EnvironmentConfiguration withStartupBudget(final Duration startupBudget) {
+        this.startupBudget = Option.of(startupBudget);
+        return this;
+    }
+
+    public Option<HostBudget> hostBudget() {
+        return hostBudget;
+    }
+
+    /**
+     * Resources the components of this environment may declare in total, shared with all
+     * other environments using the same budget instance. The environment is only started once
+     * the CPUs and memory declared by all of its components fit into the budget and holds them
+     * until it is stopped, so that environments starting concurrently in one JVM do not
+     * oversubscribe the machine.
+     * <br>
+     * Default: none (environments are started right away)
+     */
+    public EnvironmentConfiguration withHostBudget(final HostBudget hostBudget) {
+        this.hostBudget = Option.of(hostBudget);
+        return this;
+    }
+}
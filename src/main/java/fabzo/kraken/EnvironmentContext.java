@@ -1,27 +1,55 @@
 package fabzo.kraken;
 
+import fabzo.kraken.handler.CommandRunner;
+import fabzo.kraken.logs.LogPipeline;
+import fabzo.kraken.logs.LogSource;
+import fabzo.kraken.wait.ReadinessScheduler;
 import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
 import io.vavr.collection.List;
 import io.vavr.collection.Map;
+import io.vavr.collection.Set;
 import io.vavr.control.Option;
 import io.vavr.control.Try;
+import lombok.val;
 import org.apache.commons.text.StrSubstitutor;
 
+import javax.sql.DataSource;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 public class EnvironmentContext {
     public static final String PORT_REF_TO = "%s.ports.%s.to";
     public static final String PORT_REF_FROM = "%s.ports.%s.from";
     public static final String IP_REF = "%s.ip";
 
+    private static final Pattern COMPONENT_REF = Pattern.compile("\\$\\{([^.}]+)\\.(?:ip|ports\\.[^.}]+\\.(?:from|to))}");
+
     private final String salt;
-    private Option<String> publicFacingIP = Option.none();
-    private Map<String, String> environmentVariables = HashMap.empty();
-    private List<Runnable> shutdownHooks = List.empty();
+    private final LogPipeline logs;
+    private final ReadinessScheduler readiness;
+    private volatile Option<String> publicFacingIP = Option.none();
+    private volatile Option<Long> startupDeadline = Option.none();
+    private volatile Map<String, String> environmentVariables = HashMap.empty();
+    private volatile List<Runnable> shutdownHooks = List.empty();
+    private volatile Map<String, CompletableFuture<Void>> healthStatus = HashMap.empty();
+    private volatile Map<String, LogSource> logSources = HashMap.empty();
+    private volatile Map<String, DataSource> dataSources = HashMap.empty();
+    private volatile Map<String, CommandRunner> commandRunners = HashMap.empty();
 
     public EnvironmentContext(final String salt) {
+        this(salt, LogPipeline.defaultPipeline(), new ReadinessScheduler(2));
+    }
+
+    public EnvironmentContext(final String salt, final LogPipeline logs, final ReadinessScheduler readiness) {
         this.salt = salt;
+        this.logs = logs;
+        this.readiness = readiness;
     }
 
-    public void putEnv(final String name, final String value) {
+    public synchronized void putEnv(final String name, final String value) {
         this.environmentVariables = environmentVariables.put(name, value);
     }
 
@@ -38,6 +66,39 @@ public class EnvironmentContext {
         return salt;
     }
 
+    /**
+     * Pipeline that followed component logs are written to.
+     */
+    public LogPipeline logs() {
+        return logs;
+    }
+
+    /**
+     * Scheduler that wait functions run their attempts on.
+     */
+    public ReadinessScheduler readiness() {
+        return readiness;
+    }
+
+    /**
+     * Sets the time all components have to be started in, or removes it.
+     */
+    public void setStartupBudget(final Option<Duration> budget) {
+        startupDeadline = budget.map(duration -> System.nanoTime() + duration.toNanos());
+    }
+
+    /**
+     * Time a wait may take at most, considering the remaining startup budget.
+     */
+    public Duration remaining(final Duration atMost) {
+        if (startupDeadline.isEmpty()) {
+            return atMost;
+        }
+
+        val remaining = Duration.ofNanos(Math.max(0, startupDeadline.get() - System.nanoTime()));
+        return remaining.compareTo(atMost) < 0 ? remaining : atMost;
+    }
+
     public Option<String> publicFacingIP() {
         return publicFacingIP;
     }
@@ -46,6 +107,14 @@ public class EnvironmentContext {
         return StrSubstitutor.replace(text, environmentVariables.toJavaMap());
     }
 
+    /**
+     * Resolves the text, preferring the given values over the environment variables, e.g.
+     * to resolve references between containers sharing a network.
+     */
+    public String resolve(final String text, final Map<String, String> overrides) {
+        return StrSubstitutor.replace(text, environmentVariables.merge(overrides, (value, override) -> override).toJavaMap());
+    }
+
     public void setPublicFacingIP(final String ip) {
         publicFacingIP = Option.of(ip);
     }
@@ -56,6 +125,15 @@ public class EnvironmentContext {
                 .map(this::toInt);
     }
 
+    /**
+     * Returns the port inside the container (or pod) the named port of the service maps to.
+     */
+    public Option<Integer> containerPort(final String name, final String portName) {
+        return environmentVariables
+                .get(String.format(PORT_REF_TO, name, portName))
+                .map(this::toInt);
+    }
+
     private Integer toInt(final String port) {
         return Try.of(() -> Integer.valueOf(port)).getOrNull();
     }
@@ -73,11 +151,91 @@ public class EnvironmentContext {
                 .getOrElse(() -> publicFacingIP().getOrElse("localhost"));
     }
 
-    public void registerShutdownHook(final Runnable shutdownHook) {
+    public synchronized void registerShutdownHook(final Runnable shutdownHook) {
         shutdownHooks = shutdownHooks.append(shutdownHook);
     }
 
     public List<Runnable> shutdownHooks() {
         return shutdownHooks;
     }
+
+    /**
+     * Registers the future the handler completes once the health check of the component
+     * reported it as healthy.
+     */
+    public synchronized void setHealthStatus(final String componentName, final CompletableFuture<Void> healthy) {
+        healthStatus = healthStatus.put(componentName, healthy);
+    }
+
+    public Option<CompletableFuture<Void>> healthStatus(final String componentName) {
+        return healthStatus.get(componentName);
+    }
+
+    /**
+     * Registers access to the output of the component, e.g. for waits matching its log.
+     */
+    public synchronized void setLogSource(final String componentName, final LogSource logSource) {
+        logSources = logSources.put(componentName, logSource);
+    }
+
+    public Option<LogSource> logSource(final String componentName) {
+        return logSources.get(componentName);
+    }
+
+    /**
+     * Registers the means to execute commands inside the component, e.g. for exec waits.
+     */
+    public synchronized void setCommandRunner(final String componentName, final CommandRunner commandRunner) {
+        commandRunners = commandRunners.put(componentName, commandRunner);
+    }
+
+    public Option<CommandRunner> commandRunner(final String componentName) {
+        return commandRunners.get(componentName);
+    }
+
+    /**
+     * Publishes a data source connected to the component. Data sources that are
+     * {@link AutoCloseable} are closed together with the environment.
+     */
+    public synchronized void setDataSource(final String componentName, final DataSource dataSource) {
+        dataSources.get(componentName).forEach(EnvironmentContext::closeQuietly);
+        dataSources = dataSources.put(componentName, dataSource);
+    }
+
+    public Option<DataSource> dataSource(final String componentName) {
+        return dataSources.get(componentName);
+    }
+
+    /**
+     * Closes and removes all published data sources.
+     */
+    public synchronized void closeDataSources() {
+        dataSources.values().forEach(EnvironmentContext::closeQuietly);
+        dataSources = HashMap.empty();
+    }
+
+    private static void closeQuietly(final DataSource dataSource) {
+        if (dataSource instanceof AutoCloseable) {
+            Try.run(((AutoCloseable) dataSource)::close);
+        }
+    }
+
+    /**
+     * Extracts the names of all components referenced by port or IP references in the given text.
+     *
+     * @param text Text containing references like ${:componentName:.ip}
+     * @return Names of the referenced components
+     */
+    public static Set<String> referencedComponents(final String text) {
+        Set<String> names = HashSet.empty();
+        if (text == null) {
+            return names;
+        }
+
+        final Matcher matcher = COMPONENT_REF.matcher(text);
+        while (matcher.find()) {
+            names = names.add(matcher.group(1));
+        }
+        return names;
+    }
 }
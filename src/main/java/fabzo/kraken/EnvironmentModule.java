@@ -15,6 +15,7 @@ import static fabzo.kraken.EnvironmentContext.PORT_REF_FROM;
 public abstract class EnvironmentModule {
     private List<InfrastructureComponent> components = List.empty();
     private List<LifecycleHandler> handlers = List.empty();
+    private EnvironmentConfiguration configuration = EnvironmentConfiguration.create();
 
     public abstract void configure();
 
@@ -26,6 +27,10 @@ public abstract class EnvironmentModule {
         this.handlers = handlers.append(runner);
     }
 
+    protected void register(final EnvironmentConfiguration configuration) {
+        this.configuration = configuration;
+    }
+
     List<InfrastructureComponent> components() {
         return components;
     }
@@ -34,6 +39,10 @@ public abstract class EnvironmentModule {
         return handlers;
     }
 
+    EnvironmentConfiguration configuration() {
+        return configuration;
+    }
+
     /**
      * Builds a port reference that can be used to reference the port
      * in component parameters.
@@ -0,0 +1,177 @@
+package fabzo.kraken;
+
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * CPUs and memory the components of one or more environments may declare in total. An
+ * environment is admitted as a whole: it is only started once the resources declared by all
+ * of its components fit into the budget, otherwise it is queued until other environments are
+ * stopped. Admitting environments partially could deadlock two of them, each holding part of
+ * the budget while waiting for the rest. Environments are admitted in the order they asked for
+ * admission, so large environments are not starved by smaller ones.
+ * <br>
+ * The budget only coordinates environments sharing the same instance, share one instance between
+ * the configurations of all environments that run concurrently in the same JVM. Components
+ * without declared resources are not limited.
+ */
+@Slf4j
+public class HostBudget {
+    private Option<Double> cpus = Option.none();
+    private Option<Long> memory = Option.none();
+
+    private double usedCpus = 0;
+    private long usedMemory = 0;
+    private final Map<String, Demand> admitted = new HashMap<>();
+    private final Queue<Request> waiting = new ArrayDeque<>();
+
+    public static HostBudget create() {
+        return new HostBudget();
+    }
+
+    /**
+     * Number of CPUs available to components.
+     * <br>
+     * Default: none (CPUs are not limited)
+     */
+    public HostBudget withCpus(final double cpus) {
+        this.cpus = Option.of(cpus);
+        return this;
+    }
+
+    /**
+     * Memory in bytes available to components.
+     * <br>
+     * Default: none (memory is not limited)
+     */
+    public HostBudget withMemory(final long memoryInBytes) {
+        this.memory = Option.of(memoryInBytes);
+        return this;
+    }
+
+    public Option<Double> cpus() {
+        return cpus;
+    }
+
+    public Option<Long> memory() {
+        return memory;
+    }
+
+    /**
+     * Reserves the resources under the key once they are available. Callers reserve everything
+     * they need with a single call, as reserving more under another key while holding resources
+     * may wait forever.
+     * <br>
+     * Admitting a key again, e.g. when an environment is started again after starting it
+     * failed, keeps the reservation or pending request of the first admission.
+     *
+     * @return Future completing once the resources have been reserved, failing right away if
+     * they exceed the budget as a whole
+     */
+    CompletableFuture<Void> admit(final String key, final double cpus, final long memory) {
+        val demand = new Demand(cpus, memory);
+        if (!fitsEmpty(demand)) {
+            val failed = new CompletableFuture<Void>();
+            failed.completeExceptionally(new IllegalStateException(String.format(
+                    "%s requires %s CPUs and %d bytes of memory, exceeding the budget of %s CPUs and %s bytes",
+                    key, cpus, memory, this.cpus.map(String::valueOf).getOrElse("unlimited"),
+                    this.memory.map(String::valueOf).getOrElse("unlimited"))));
+            return failed;
+        }
+
+        synchronized (this) {
+            if (admitted.containsKey(key)) {
+                return CompletableFuture.completedFuture(null);
+            }
+            val pending = waiting.stream().filter(request -> request.key.equals(key)).findFirst();
+            if (pending.isPresent()) {
+                return pending.get().admitted;
+            }
+
+            if (waiting.isEmpty() && fits(demand)) {
+                reserve(key, demand);
+                return CompletableFuture.completedFuture(null);
+            }
+
+            log.info("Waiting for {} CPUs and {} bytes of memory to start {}", cpus, memory, key);
+            val request = new Request(key, demand);
+            waiting.add(request);
+            return request.admitted;
+        }
+    }
+
+    /**
+     * Returns the resources reserved under the key, or withdraws its pending request.
+     */
+    void release(final String key) {
+        final java.util.List<Request> admittable = new ArrayList<>();
+        synchronized (this) {
+            val demand = admitted.remove(key);
+            if (demand != null) {
+                usedCpus -= demand.cpus;
+                usedMemory -= demand.memory;
+            }
+            waiting.removeIf(request -> {
+                if (request.key.equals(key)) {
+                    request.admitted.cancel(false);
+                    return true;
+                }
+                return false;
+            });
+
+            while (!waiting.isEmpty() && fits(waiting.peek().demand)) {
+                val request = waiting.poll();
+                reserve(request.key, request.demand);
+                admittable.add(request);
+            }
+        }
+
+        // Completed outside of the lock, as dependent stages may run right away
+        admittable.forEach(request -> request.admitted.complete(null));
+    }
+
+    private void reserve(final String key, final Demand demand) {
+        admitted.put(key, demand);
+        usedCpus += demand.cpus;
+        usedMemory += demand.memory;
+    }
+
+    private boolean fits(final Demand demand) {
+        return cpus.forAll(total -> usedCpus + demand.cpus <= total)
+                && memory.forAll(total -> usedMemory + demand.memory <= total);
+    }
+
+    private boolean fitsEmpty(final Demand demand) {
+        return cpus.forAll(total -> demand.cpus <= total)
+                && memory.forAll(total -> demand.memory <= total);
+    }
+
+    private static class Demand {
+        private final double cpus;
+        private final long memory;
+
+        Demand(final double cpus, final long memory) {
+            this.cpus = cpus;
+            this.memory = memory;
+        }
+    }
+
+    private static class Request {
+        private final String key;
+        private final Demand demand;
+        private final CompletableFuture<Void> admitted = new CompletableFuture<>();
+
+        Request(final String key, final Demand demand) {
+            this.key = key;
+            this.demand = demand;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package fabzo.kraken;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import fabzo.kraken.components.InfrastructureComponent;
+import io.vavr.collection.LinkedHashMap;
+import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.BiFunction;
+import java.util.function.Supplier;
+
+/**
+ * Starts components in dependency order. Components that do not depend on each other
+ * are started concurrently, a dependent component is started as soon as everything
+ * it references is ready. At most parallelism components are in flight at a time,
+ * counted from handing a component to its handler until it is ready. With a
+ * parallelism of one every component additionally waits for the previously
+ * registered one.
+ */
+@Slf4j
+class StartupScheduler {
+    private final List<InfrastructureComponent> components;
+    private final int parallelism;
+    private final Option<Duration> budget;
+    private final Semaphore permits;
+    private final ConcurrentLinkedQueue<Runnable> waiting = new ConcurrentLinkedQueue<>();
+
+    StartupScheduler(final List<InfrastructureComponent> components, final int parallelism, final Option<Duration> budget) {
+        this.components = components;
+        this.parallelism = parallelism;
+        this.budget = budget;
+        this.permits = new Semaphore(parallelism);
+    }
+
+    /**
+     * Starts all components and blocks until they are ready, one of them failed or the
+     * startup budget is used up.
+     *
+     * @param starter Starts a component on the given executor and returns a future that
+     *                completes once the component is ready
+     */
+    void run(final BiFunction<InfrastructureComponent, Executor, CompletableFuture<?>> starter) {
+        if (components.isEmpty()) {
+            return;
+        }
+
+        val byName = indexByName();
+        val dependencies = byName.mapValues(this::dependenciesOf);
+        validate(byName, dependencies);
+
+        val executor = newExecutor();
+        try {
+            val failure = new CompletableFuture<Void>();
+            Map<String, CompletableFuture<Void>> futures = LinkedHashMap.empty();
+            CompletableFuture<Void> previous = CompletableFuture.completedFuture(null);
+
+            for (val component : sort(dependencies).map(byName::apply)) {
+                final Map<String, CompletableFuture<Void>> started = futures;
+                val requirements = dependencies.apply(component.name()).toList()
+                        .map(started::apply)
+                        .appendAll(parallelism == 1 ? List.of(previous) : List.empty());
+
+                final CompletableFuture<Void> future = allOf(requirements)
+                        .thenComposeAsync(ignored -> withPermit(() -> starter.apply(component, executor)), executor)
+                        .thenApply(ignored -> null);
+                future.whenComplete((ignored, e) -> {
+                    if (e != null) {
+                        failure.completeExceptionally(e);
+                    }
+                });
+
+                futures = futures.put(component.name(), future);
+                previous = future;
+            }
+
+            await(CompletableFuture.anyOf(allOf(futures.values().toList()), failure));
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Starts the component once a permit is free and holds the permit until the returned
+     * future completes. Starters return before the component is ready, so the permits and
+     * not the executor bound the number of components in flight. Waiting for a permit does
+     * not block a thread of the executor, handlers run their stages on it.
+     */
+    private CompletableFuture<Object> withPermit(final Supplier<CompletableFuture<?>> start) {
+        val result = new CompletableFuture<Object>();
+        waiting.add(() -> {
+            try {
+                start.get().whenComplete((value, e) -> {
+                    releasePermit();
+                    if (e != null) {
+                        result.completeExceptionally(e);
+                    } else {
+                        result.complete(value);
+                    }
+                });
+            } catch (final RuntimeException e) {
+                releasePermit();
+                result.completeExceptionally(e);
+            }
+        });
+        drain();
+        return result;
+    }
+
+    private void releasePermit() {
+        permits.release();
+        drain();
+    }
+
+    private void drain() {
+        while (!waiting.isEmpty() && permits.tryAcquire()) {
+            val next = waiting.poll();
+            if (next == null) {
+                permits.release();
+            } else {
+                next.run();
+            }
+        }
+    }
+
+    private void await(final CompletableFuture<?> started) {
+        try {
+            if (budget.isDefined()) {
+                started.get(budget.get().toNanos(), TimeUnit.NANOSECONDS);
+            } else {
+                started.get();
+            }
+        } catch (final TimeoutException e) {
+            throw new IllegalStateException("Components did not start within the startup budget of " + budget.get());
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while starting components");
+        } catch (final ExecutionException e) {
+            throw unwrap(e.getCause());
+        }
+    }
+
+    private Map<String, InfrastructureComponent> indexByName() {
+        Map<String, InfrastructureComponent> byName = LinkedHashMap.empty();
+        for (val component : components) {
+            if (byName.containsKey(component.name())) {
+                throw new IllegalStateException("Component name " + component.name() + " is registered more than once");
+            }
+            byName = byName.put(component.name(), component);
+        }
+        return byName;
+    }
+
+    private Set<String> dependenciesOf(final InfrastructureComponent component) {
+        return component.dependencies().remove(component.name());
+    }
+
+    private void validate(final Map<String, InfrastructureComponent> byName, final Map<String, Set<String>> dependencies) {
+        dependencies.forEach((name, requirements) -> requirements.forEach(requirement -> {
+            if (!byName.containsKey(requirement)) {
+                throw new IllegalStateException(String.format(
+                        "Component %s depends on %s which is not registered", name, requirement));
+            }
+        }));
+    }
+
+    /**
+     * Orders the components topologically while preserving the registration order
+     * for components that do not depend on each other.
+     */
+    private List<String> sort(final Map<String, Set<String>> dependencies) {
+        List<String> sorted = List.empty();
+        List<String> remaining = dependencies.keySet().toList();
+
+        while (!remaining.isEmpty()) {
+            final List<String> done = sorted;
+            val next = remaining.find(name -> dependencies.apply(name).forAll(done::contains));
+            if (next.isEmpty()) {
+                throw new IllegalStateException("Cyclic dependency between components " + remaining.mkString(", "));
+            }
+            sorted = sorted.append(next.get());
+            remaining = remaining.remove(next.get());
+        }
+
+        log.debug("Component start order {}", sorted.mkString(", "));
+        return sorted;
+    }
+
+    private ExecutorService newExecutor() {
+        val threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("kraken-startup-%d")
+                .setDaemon(true)
+                .build();
+
+        return Executors.newFixedThreadPool(Math.min(parallelism, components.size()), threadFactory);
+    }
+
+    private static CompletableFuture<Void> allOf(final List<CompletableFuture<Void>> futures) {
+        return CompletableFuture.allOf(futures.toJavaList().toArray(new CompletableFuture<?>[0]));
+    }
+
+    private RuntimeException unwrap(final Throwable error) {
+        val cause = error instanceof CompletionException ? error.getCause() : error;
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        return new IllegalStateException("Failed to start components", cause);
+    }
+}
@@ -0,0 +1,116 @@
+package fabzo.kraken;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * Runs stop tasks on a bounded executor. All tasks share a single deadline, tasks
+ * that have not finished once it passed are cancelled and reported.
+ */
+@Slf4j
+class Teardown {
+    private final int parallelism;
+    private final Option<Duration> deadline;
+
+    Teardown(final int parallelism, final Option<Duration> deadline) {
+        this.parallelism = parallelism;
+        this.deadline = deadline;
+    }
+
+    /**
+     * Runs all tasks and waits for them to finish or the deadline to pass.
+     *
+     * @return Number of tasks that failed or did not finish in time
+     */
+    int run(final List<Runnable> tasks) {
+        return runAsync(tasks.map(task -> executor -> CompletableFuture.runAsync(task, executor)));
+    }
+
+    /**
+     * Starts all tasks with the executor they run their stages on and waits for them to
+     * finish or the deadline to pass.
+     *
+     * @return Number of tasks that failed or did not finish in time
+     */
+    int runAsync(final List<Function<Executor, CompletableFuture<?>>> tasks) {
+        if (tasks.isEmpty()) {
+            return 0;
+        }
+
+        val executor = newExecutor(Math.min(parallelism, tasks.size()));
+        try {
+            val futures = tasks.map(task -> start(task, executor));
+            val all = CompletableFuture.allOf(futures.toJavaList().toArray(new CompletableFuture<?>[0]));
+            try {
+                if (deadline.isDefined()) {
+                    all.get(deadline.get().toMillis(), TimeUnit.MILLISECONDS);
+                } else {
+                    all.get();
+                }
+            } catch (final ExecutionException | TimeoutException e) {
+                // Reported per task below
+            }
+
+            return futures.count(this::failed);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("Interrupted while waiting for components to stop");
+            return tasks.size();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private CompletableFuture<?> start(final Function<Executor, CompletableFuture<?>> task, final Executor executor) {
+        try {
+            return task.apply(executor);
+        } catch (final RuntimeException e) {
+            val failed = new CompletableFuture<Void>();
+            failed.completeExceptionally(e);
+            return failed;
+        }
+    }
+
+    private boolean failed(final CompletableFuture<?> future) {
+        if (!future.isDone()) {
+            future.cancel(true);
+            log.warn("Stopping did not finish within {}", deadline.get());
+            return true;
+        }
+
+        try {
+            future.join();
+            return false;
+        } catch (final CancellationException e) {
+            log.warn("Stopping has been cancelled");
+            return true;
+        } catch (final CompletionException e) {
+            log.error("Stopping failed", e.getCause());
+            return true;
+        }
+    }
+
+    private ExecutorService newExecutor(final int threads) {
+        val threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("kraken-teardown-%d")
+                .setDaemon(true)
+                .build();
+
+        return Executors.newFixedThreadPool(threads, threadFactory);
+    }
+}
@@ -1,7 +1,15 @@
 package fabzo.kraken.components;
 
+import fabzo.kraken.EnvironmentContext;
 import io.vavr.collection.HashMap;
+import io.vavr.collection.List;
 import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.BiConsumer;
 
 public class DockerComponent extends InfrastructureComponent {
     private String id;
@@ -13,6 +21,16 @@ public class DockerComponent extends InfrastructureComponent {
     private boolean followLogs = false;
     private Map<String, Integer> ports = HashMap.empty();
     private Map<String, String> env = HashMap.empty();
+    private Option<Duration> stopTimeout = Option.none();
+    private Option<BiConsumer<EnvironmentContext, DockerComponent>> initHook = Option.none();
+    private Option<HealthCheck> healthCheck = Option.none();
+    private boolean healthCheckFromWaits = false;
+    private boolean checkpoint = false;
+    private List<String> checkpointInputs = List.empty();
+    private List<Path> checkpointFiles = List.empty();
+    private List<Mount> mounts = List.empty();
+    private Option<Double> cpus = Option.none();
+    private Option<Long> memory = Option.none();
 
     public static DockerComponent create() {
         return new DockerComponent();
@@ -58,6 +76,150 @@ public class DockerComponent extends InfrastructureComponent {
         return this;
     }
 
+    /**
+     * Mounts a memory backed file system at the path, e.g. the data directory of a database
+     * to avoid slow writes to the container file system. On kubernetes an emptyDir volume
+     * with medium Memory is used.
+     * <br>
+     * Note: Data written to a tmpfs is not part of a checkpoint.
+     */
+    public DockerComponent withTmpfs(final String path) {
+        this.mounts = mounts.append(Mount.tmpfs(path, Option.none()));
+        return this;
+    }
+
+    /**
+     * Mounts a memory backed file system limited to the given number of bytes at the path.
+     */
+    public DockerComponent withTmpfs(final String path, final long sizeInBytes) {
+        this.mounts = mounts.append(Mount.tmpfs(path, Option.of(sizeInBytes)));
+        return this;
+    }
+
+    /**
+     * Mounts a file or directory of the host into the container. Not supported on kubernetes.
+     */
+    public DockerComponent withBindMount(final Path hostPath, final String path) {
+        return withBindMount(hostPath, path, false);
+    }
+
+    public DockerComponent withBindMount(final Path hostPath, final String path, final boolean readOnly) {
+        this.mounts = mounts.append(Mount.bind(hostPath.toAbsolutePath().toString(), path, readOnly));
+        return this;
+    }
+
+    /**
+     * Mounts a named volume into the container, docker creates it if it does not exist.
+     * The volume is kept when the container is removed, e.g. to share a cache between runs.
+     * On kubernetes an emptyDir volume is used.
+     */
+    public DockerComponent withVolume(final String volumeName, final String path) {
+        this.mounts = mounts.append(Mount.volume(volumeName, path));
+        return this;
+    }
+
+    /**
+     * Limits the container to the given number of CPUs, e.g. 1.5. The limit also counts
+     * against the host budget of the environment configuration.
+     */
+    public DockerComponent withCpus(final double cpus) {
+        if (cpus <= 0) {
+            throw new IllegalArgumentException("CPUs must be greater than 0");
+        }
+        this.cpus = Option.of(cpus);
+        return this;
+    }
+
+    /**
+     * Limits the memory of the container to the given number of bytes. The limit also counts
+     * against the host budget of the environment configuration.
+     */
+    public DockerComponent withMemory(final long memoryInBytes) {
+        if (memoryInBytes <= 0) {
+            throw new IllegalArgumentException("Memory must be greater than 0");
+        }
+        this.memory = Option.of(memoryInBytes);
+        return this;
+    }
+
+    /**
+     * Time the container is given to stop before it is killed. A timeout of zero
+     * kills the container right away, which is fine for throwaway test containers.
+     */
+    public DockerComponent withStopTimeout(final Duration stopTimeout) {
+        this.stopTimeout = Option.of(stopTimeout);
+        return this;
+    }
+
+    /**
+     * Health check docker executes inside of the container. Use a {@link fabzo.kraken.wait.HealthyWait}
+     * to wait for the container to become healthy.
+     */
+    public DockerComponent withHealthCheck(final HealthCheck healthCheck) {
+        this.healthCheck = Option.of(healthCheck);
+        return this;
+    }
+
+    /**
+     * Generates a health check from the TCP and HTTP waits of the component. The container is
+     * healthy once all of their ports accept connections and all of their URLs respond
+     * successfully from inside of the container. HTTP waits are only included if their URL
+     * references a port of this component, other waits are left out with a warning.
+     * <br>
+     * Note: Requires nc (TCP waits) and wget (HTTP waits) to be available in the image.
+     */
+    public DockerComponent withHealthCheckFromWaits() {
+        this.healthCheckFromWaits = true;
+        return this;
+    }
+
+    /**
+     * Hook that is executed once all wait functions succeeded, e.g. to run schema
+     * migrations or seed data. Skipped when the container is started from a checkpoint.
+     */
+    public DockerComponent withInitHook(final BiConsumer<EnvironmentContext, DockerComponent> initHook) {
+        this.initHook = Option.of(initHook);
+        return this;
+    }
+
+    /**
+     * Commits the container to a local checkpoint image once all wait functions and the
+     * init hook succeeded. Subsequent runs start directly from that image as long as the
+     * configuration and checkpoint inputs did not change.
+     * <br>
+     * Note: Data written to volumes is not part of a checkpoint, images declaring volumes
+     * (e.g. mysql or postgres) are rejected.
+     */
+    public DockerComponent withCheckpoint() {
+        this.checkpoint = true;
+        return this;
+    }
+
+    /**
+     * Adds a value to the checkpoint hash, e.g. the version of the seed data.
+     */
+    public DockerComponent withCheckpointInput(final String input) {
+        this.checkpoint = true;
+        this.checkpointInputs = checkpointInputs.append(input);
+        return this;
+    }
+
+    /**
+     * Adds the content of a file or of all files inside a directory to the checkpoint
+     * hash, e.g. the migration scripts executed by the init hook.
+     */
+    public DockerComponent withCheckpointInput(final Path input) {
+        this.checkpoint = true;
+        this.checkpointFiles = checkpointFiles.append(input);
+        return this;
+    }
+
+    @Override
+    public DockerComponent dependsOn(final String... componentNames) {
+        super.dependsOn(componentNames);
+        return this;
+    }
+
     public void setId(final String id) {
         this.id = id;
     }
@@ -82,6 +244,18 @@ public class DockerComponent extends InfrastructureComponent {
         return env;
     }
 
+    /**
+     * Explicit dependencies as well as all components referenced by port or IP
+     * references in the environment variables.
+     */
+    @Override
+    public Set<String> dependencies() {
+        return env.values()
+                .flatMap(EnvironmentContext::referencedComponents)
+                .toSet()
+                .addAll(super.dependencies());
+    }
+
     public String id() {
         return id;
     }
@@ -97,4 +271,44 @@ public class DockerComponent extends InfrastructureComponent {
     public String command() {
         return command;
     }
+
+    public Option<Duration> stopTimeout() {
+        return stopTimeout;
+    }
+
+    public Option<HealthCheck> healthCheck() {
+        return healthCheck;
+    }
+
+    public boolean isHealthCheckFromWaits() {
+        return healthCheckFromWaits;
+    }
+
+    public Option<BiConsumer<EnvironmentContext, DockerComponent>> initHook() {
+        return initHook;
+    }
+
+    public boolean isCheckpoint() {
+        return checkpoint;
+    }
+
+    public List<String> checkpointInputs() {
+        return checkpointInputs;
+    }
+
+    public List<Path> checkpointFiles() {
+        return checkpointFiles;
+    }
+
+    public List<Mount> mounts() {
+        return mounts;
+    }
+
+    public Option<Double> cpus() {
+        return cpus;
+    }
+
+    public Option<Long> memory() {
+        return memory;
+    }
 }
@@ -0,0 +1,80 @@
+package fabzo.kraken.components;
+
+import com.google.common.base.MoreObjects;
+
+import java.time.Duration;
+
+/**
+ * Health check executed by docker inside of the container. The command is run by the
+ * containers shell, an exit code of 0 marks the container as healthy.
+ */
+public class HealthCheck {
+    private final String command;
+    private Duration interval = Duration.ofSeconds(1);
+    private Duration timeout = Duration.ofSeconds(1);
+    private int retries = 60;
+
+    public static HealthCheck command(final String command) {
+        return new HealthCheck(command);
+    }
+
+    private HealthCheck(final String command) {
+        this.command = command;
+    }
+
+    /**
+     * Time between two executions of the command.
+     * <br>
+     * Default: 1 second
+     */
+    public HealthCheck withInterval(final Duration interval) {
+        this.interval = interval;
+        return this;
+    }
+
+    /**
+     * Time a single execution may take before it is considered failed.
+     * <br>
+     * Default: 1 second
+     */
+    public HealthCheck withTimeout(final Duration timeout) {
+        this.timeout = timeout;
+        return this;
+    }
+
+    /**
+     * Number of consecutive failures after which the container is considered unhealthy.
+     * <br>
+     * Default: 60
+     */
+    public HealthCheck withRetries(final int retries) {
+        this.retries = retries;
+        return this;
+    }
+
+    public String command() {
+        return command;
+    }
+
+    public Duration interval() {
+        return interval;
+    }
+
+    public Duration timeout() {
+        return timeout;
+    }
+
+    public int retries() {
+        return retries;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("command", command)
+                .add("interval", interval)
+                .add("timeout", timeout)
+                .add("retries", retries)
+                .toString();
+    }
+}
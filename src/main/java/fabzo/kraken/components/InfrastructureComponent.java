@@ -2,21 +2,40 @@ package fabzo.kraken.components;
 
 
 import fabzo.kraken.wait.Wait;
+import io.vavr.collection.HashSet;
 import io.vavr.collection.List;
+import io.vavr.collection.Set;
 
 public abstract class InfrastructureComponent implements Named {
-    private ComponentState state = ComponentState.WAITING;
+    private volatile ComponentState state = ComponentState.WAITING;
     private List<Wait> waitFunctions = List.empty();
+    private Set<String> dependencies = HashSet.empty();
 
     public InfrastructureComponent withWait(final Wait waitFunc) {
         this.waitFunctions = waitFunctions.append(waitFunc);
         return this;
     }
 
+    /**
+     * Declares that this component may only be started once the given components
+     * have been started and are ready.
+     */
+    public InfrastructureComponent dependsOn(final String... componentNames) {
+        this.dependencies = dependencies.addAll(List.of(componentNames));
+        return this;
+    }
+
     public List<Wait> waitFuncs() {
         return waitFunctions;
     }
 
+    /**
+     * Names of all components that have to be ready before this component can be started.
+     */
+    public Set<String> dependencies() {
+        return dependencies;
+    }
+
     public void setState(final ComponentState state) {
         this.state = state;
     }
@@ -24,4 +43,4 @@ public abstract class InfrastructureComponent implements Named {
     public ComponentState state() {
         return state;
     }
-}
\ No newline at end of file
+}
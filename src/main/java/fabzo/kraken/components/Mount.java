@@ -0,0 +1,90 @@
+package fabzo.kraken.components;
+
+import com.google.common.base.MoreObjects;
+import io.vavr.control.Option;
+
+/**
+ * Storage mounted into the container of a {@link DockerComponent}.
+ */
+public class Mount {
+    private final Type type;
+    private final Option<String> source;
+    private final String target;
+    private final Option<Long> size;
+    private final boolean readOnly;
+
+    public enum Type {
+        /**
+         * Memory backed file system, discarded with the container
+         */
+        TMPFS,
+        /**
+         * File or directory of the host
+         */
+        BIND,
+        /**
+         * Named docker volume, kept after the container has been removed
+         */
+        VOLUME
+    }
+
+    public static Mount tmpfs(final String target, final Option<Long> size) {
+        return new Mount(Type.TMPFS, Option.none(), target, size, false);
+    }
+
+    public static Mount bind(final String source, final String target, final boolean readOnly) {
+        return new Mount(Type.BIND, Option.of(source), target, Option.none(), readOnly);
+    }
+
+    public static Mount volume(final String name, final String target) {
+        return new Mount(Type.VOLUME, Option.of(name), target, Option.none(), false);
+    }
+
+    private Mount(final Type type, final Option<String> source, final String target, final Option<Long> size, final boolean readOnly) {
+        this.type = type;
+        this.source = source;
+        this.target = target;
+        this.size = size;
+        this.readOnly = readOnly;
+    }
+
+    public Type type() {
+        return type;
+    }
+
+    /**
+     * Host path of bind mounts or name of volumes.
+     */
+    public Option<String> source() {
+        return source;
+    }
+
+    /**
+     * Path inside of the container.
+     */
+    public String target() {
+        return target;
+    }
+
+    /**
+     * Size limit of tmpfs mounts in bytes.
+     */
+    public Option<Long> size() {
+        return size;
+    }
+
+    public boolean isReadOnly() {
+        return readOnly;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("type", type)
+                .add("source", source.getOrNull())
+                .add("target", target)
+                .add("size", size.getOrNull())
+                .add("readOnly", readOnly)
+                .toString();
+    }
+}
@@ -6,6 +6,9 @@ import fabzo.kraken.components.InfrastructureComponent;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+
 @Slf4j
 public abstract class AbstractLifecycleHandler implements LifecycleHandler {
     private boolean isInitialized = false;
@@ -15,11 +18,47 @@ public abstract class AbstractLifecycleHandler implements LifecycleHandler {
         final boolean runResult = doRun(component, ctx);
 
         waitForComponent(component, ctx);
+        afterReady(component, ctx);
 
         return runResult;
     }
 
+    /**
+     * Runs {@link #doRun} and the wait functions as separate steps on the executor.
+     * Handlers that can report creation and start separately should override this
+     * and build their stages with {@link #stages}.
+     */
+    @Override
+    public LifecycleStages runAsync(final InfrastructureComponent component, final EnvironmentContext ctx, final Executor executor) {
+        val started = CompletableFuture.supplyAsync(() -> doRun(component, ctx), executor);
+        return stages(component, ctx, started, started, executor);
+    }
+
+    /**
+     * Completes the given created and started stages with a ready stage that
+     * executes the wait functions of the component once it has been started. The wait
+     * functions do not occupy a thread of the executor while waiting.
+     */
+    protected LifecycleStages stages(final InfrastructureComponent component,
+                                     final EnvironmentContext ctx,
+                                     final CompletableFuture<?> created,
+                                     final CompletableFuture<Boolean> started,
+                                     final Executor executor) {
+        val ready = started.thenCompose(runResult -> waitForComponentAsync(component, ctx)
+                .thenApplyAsync(ignored -> {
+                    afterReady(component, ctx);
+                    return runResult;
+                }, executor));
+
+        return new LifecycleStages(created.thenApply(ignored -> null), started, ready);
+    }
+
     protected void waitForComponent(final InfrastructureComponent component, final EnvironmentContext ctx) {
+        if (isReady(component)) {
+            log.info("Skipping wait functions of {} as it is already ready", component.name());
+            return;
+        }
+
         component.waitFuncs().forEach(wait -> {
             log.info("Waiting for {} using {}", component.name(), wait.toString());
             if (!wait.execute(ctx, component)) {
@@ -28,6 +67,40 @@ public abstract class AbstractLifecycleHandler implements LifecycleHandler {
         });
     }
 
+    /**
+     * Executes the wait functions of the component one after another without blocking.
+     */
+    protected CompletableFuture<Void> waitForComponentAsync(final InfrastructureComponent component, final EnvironmentContext ctx) {
+        if (isReady(component)) {
+            log.info("Skipping wait functions of {} as it is already ready", component.name());
+            return CompletableFuture.completedFuture(null);
+        }
+
+        return component.waitFuncs().foldLeft(CompletableFuture.<Void>completedFuture(null), (previous, wait) ->
+                previous.thenCompose(ignored -> {
+                    log.info("Waiting for {} using {}", component.name(), wait.toString());
+                    return wait.executeAsync(ctx, component).thenAccept(ready -> {
+                        if (!ready) {
+                            throw new IllegalStateException("Wait function " + wait.getClass().getSimpleName() + " failed");
+                        }
+                    });
+                }));
+    }
+
+    /**
+     * Called once all wait functions of the component succeeded.
+     */
+    protected void afterReady(final InfrastructureComponent component, final EnvironmentContext ctx) {
+    }
+
+    /**
+     * Whether the component is known to be ready without executing its wait functions,
+     * e.g. because an already running instance has been reused.
+     */
+    protected boolean isReady(final InfrastructureComponent component) {
+        return false;
+    }
+
     protected boolean isRunning(final InfrastructureComponent component) {
         val state = component.state();
 
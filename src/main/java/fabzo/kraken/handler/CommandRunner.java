@@ -0,0 +1,29 @@
+package fabzo.kraken.handler;
+
+import io.vavr.collection.List;
+
+import java.time.Duration;
+
+/**
+ * Executes commands inside a running component, registered with the
+ * {@link fabzo.kraken.EnvironmentContext} by its lifecycle handler.
+ */
+@FunctionalInterface
+public interface CommandRunner {
+
+    /**
+     * Prepares the command once so that it can be executed repeatedly, e.g. by a wait.
+     */
+    Execution prepare(final List<String> command);
+
+    @FunctionalInterface
+    interface Execution {
+
+        /**
+         * Executes the command and returns its exit code.
+         *
+         * @throws java.util.concurrent.TimeoutException if the command did not exit within the timeout
+         */
+        int run(final Duration timeout) throws Exception;
+    }
+}
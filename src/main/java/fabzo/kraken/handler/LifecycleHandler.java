@@ -2,6 +2,10 @@ package fabzo.kraken.handler;
 
 import fabzo.kraken.EnvironmentContext;
 import fabzo.kraken.components.InfrastructureComponent;
+import io.vavr.collection.List;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 
 public interface LifecycleHandler {
 
@@ -10,4 +14,27 @@ public interface LifecycleHandler {
     boolean run(final InfrastructureComponent component, final EnvironmentContext ctx);
 
     void stop(final InfrastructureComponent component, final EnvironmentContext ctx);
+
+    /**
+     * Called with all components this handler is going to run before the first of them
+     * is started, e.g. to fetch their images up front.
+     */
+    default void prepare(final List<InfrastructureComponent> components, final EnvironmentContext ctx) {
+    }
+
+    /**
+     * Starts the component without blocking the caller. Handlers that do not provide
+     * their own implementation run {@link #run} on the given executor.
+     */
+    default LifecycleStages runAsync(final InfrastructureComponent component, final EnvironmentContext ctx, final Executor executor) {
+        return LifecycleStages.completedBy(CompletableFuture.supplyAsync(() -> run(component, ctx), executor));
+    }
+
+    /**
+     * Stops the component without blocking the caller. Handlers that do not provide
+     * their own implementation run {@link #stop} on the given executor.
+     */
+    default CompletableFuture<Void> stopAsync(final InfrastructureComponent component, final EnvironmentContext ctx, final Executor executor) {
+        return CompletableFuture.runAsync(() -> stop(component, ctx), executor);
+    }
 }
@@ -0,0 +1,46 @@
+package fabzo.kraken.handler;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Progress of an asynchronously started component.
+ * <br>
+ * created: the component has been created (e.g. image pulled and container created)
+ * <br>
+ * started: the component has been started, its ports and IP are registered with the context
+ * <br>
+ * ready: all wait functions of the component succeeded
+ */
+public class LifecycleStages {
+    private final CompletableFuture<Void> created;
+    private final CompletableFuture<Boolean> started;
+    private final CompletableFuture<Boolean> ready;
+
+    public LifecycleStages(final CompletableFuture<Void> created,
+                           final CompletableFuture<Boolean> started,
+                           final CompletableFuture<Boolean> ready) {
+        this.created = created;
+        this.started = started;
+        this.ready = ready;
+    }
+
+    /**
+     * Stages for handlers that cannot report progress. All stages complete
+     * once the component is ready.
+     */
+    public static LifecycleStages completedBy(final CompletableFuture<Boolean> ready) {
+        return new LifecycleStages(ready.thenApply(ignored -> null), ready, ready);
+    }
+
+    public CompletableFuture<Void> created() {
+        return created;
+    }
+
+    public CompletableFuture<Boolean> started() {
+        return started;
+    }
+
+    public CompletableFuture<Boolean> ready() {
+        return ready;
+    }
+}
@@ -0,0 +1,96 @@
+package fabzo.kraken.handler.docker;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.Files;
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.DockerComponent;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.val;
+
+import java.io.File;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.function.Function;
+
+/**
+ * Content hashes of docker components used to recognize containers and
+ * checkpoint images created from the same configuration.
+ */
+public class ConfigurationHash {
+
+    private ConfigurationHash() {
+    }
+
+    /**
+     * Hash over everything that makes up the container of the component. Environment
+     * variables are hashed after resolving references to other components, a running
+     * container is only reused if it sees the same values.
+     */
+    public static String of(final DockerComponent dockerC, final EnvironmentContext ctx) {
+        return configuration(dockerC, ctx::resolve).hash().toString();
+    }
+
+    /**
+     * Hash over the configuration of the component and all of its checkpoint inputs.
+     * Files are hashed by content, directories by the content of all contained files.
+     * <br>
+     * Environment variables are hashed unresolved. The environment is passed again when
+     * a container is created from the checkpoint, hashing resolved values would tie the
+     * checkpoint to the ports and IPs of a single run.
+     */
+    public static String ofCheckpoint(final DockerComponent dockerC) {
+        val hasher = Hashing.sha256().newHasher();
+        putString(hasher, configuration(dockerC, Function.identity()).hash().toString());
+
+        dockerC.checkpointInputs().forEach(input -> putString(hasher, "input:" + input));
+        dockerC.checkpointFiles().forEach(path -> putFiles(hasher, path));
+
+        return hasher.hash().toString();
+    }
+
+    private static Hasher configuration(final DockerComponent dockerC, final Function<String, String> envValue) {
+        val hasher = Hashing.sha256().newHasher();
+        putString(hasher, dockerC.image());
+        putString(hasher, dockerC.tag());
+        putString(hasher, Option.of(dockerC.command()).getOrElse(""));
+
+        dockerC.env().toSortedMap(String::compareTo, entry -> entry).forEach((name, value) ->
+                putString(hasher, "env:" + name + "=" + envValue.apply(value)));
+        dockerC.ports().toSortedMap(String::compareTo, entry -> entry).forEach((name, port) ->
+                putString(hasher, "port:" + name + "=" + port));
+
+        dockerC.mounts().forEach(mount -> putString(hasher, "mount:" + mount));
+        dockerC.cpus().forEach(cpus -> putString(hasher, "cpus:" + cpus));
+        dockerC.memory().forEach(memory -> putString(hasher, "memory:" + memory));
+        dockerC.healthCheck().forEach(healthCheck -> putString(hasher, "healthcheck:" + healthCheck));
+        if (dockerC.isHealthCheckFromWaits()) {
+            putString(hasher, "healthcheck:waits");
+        }
+
+        return hasher;
+    }
+
+    private static void putFiles(final Hasher hasher, final Path path) {
+        val files = List.ofAll(Files.fileTreeTraverser().preOrderTraversal(path.toFile()))
+                .filter(File::isFile)
+                .sortBy(File::getPath);
+
+        if (files.isEmpty()) {
+            throw new IllegalArgumentException("Checkpoint input " + path + " does not exist or contains no files");
+        }
+
+        files.forEach(file -> {
+            putString(hasher, "file:" + path.toFile().toURI().relativize(file.toURI()).getPath());
+            val contentHash = Try.of(() -> Files.asByteSource(file).hash(Hashing.sha256()))
+                    .getOrElseThrow(e -> new IllegalStateException("Failed to hash checkpoint input " + file, e));
+            hasher.putBytes(contentHash.asBytes());
+        });
+    }
+
+    private static void putString(final Hasher hasher, final String value) {
+        hasher.putString(value, StandardCharsets.UTF_8).putChar('\n');
+    }
+}
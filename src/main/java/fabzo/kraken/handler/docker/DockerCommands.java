@@ -1,86 +1,430 @@
 package fabzo.kraken.handler.docker;
 
 import com.github.dockerjava.api.DockerClient;
-import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.model.Container;
+import com.github.dockerjava.api.model.Network;
+import com.github.dockerjava.api.exception.NotModifiedException;
 import com.github.dockerjava.core.DefaultDockerClientConfig;
 import com.github.dockerjava.core.DockerClientBuilder;
+import com.github.dockerjava.core.command.ExecStartResultCallback;
+import com.github.dockerjava.jaxrs.JerseyDockerCmdExecFactory;
+import fabzo.kraken.handler.CommandRunner;
+import fabzo.kraken.handler.docker.callbacks.HealthStatusResultCallback;
 import fabzo.kraken.handler.docker.callbacks.LogContainerResultCallback;
 import fabzo.kraken.handler.docker.callbacks.NoLogPullImageResultCallback;
+import fabzo.kraken.handler.docker.callbacks.StreamLogResultCallback;
+import fabzo.kraken.logs.LogPipeline;
+import fabzo.kraken.logs.LogRingBuffer;
 import fabzo.kraken.utils.ShutdownHookManager;
 import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
 import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+@Slf4j
 public class DockerCommands {
-    private static final String API_VERSION = "1.23";
+    private static final String API_VERSION = "1.24";
     private static final boolean VERIFY_TLS = false;
+    private static final long EVENTS_SUBSCRIBE_TIMEOUT_SECONDS = 10;
+
+    private static LogPipeline defaultLogPipeline;
 
-    private final String dockerSocket;
+    private final JerseyDockerCmdExecFactory execFactory;
     private final DockerClient dockerClient;
-    private List<DockerClient> logDockerClients = List.empty();
+    private final java.util.Map<String, Closeable> logStreams = new ConcurrentHashMap<>();
+    private final java.util.Map<String, Closeable> eventStreams = new ConcurrentHashMap<>();
+    private final Set<String> availableImages = ConcurrentHashMap.newKeySet();
+    private final Set<String> pulledImages = ConcurrentHashMap.newKeySet();
+    private final Option<Path> imageCache;
+    private final boolean imageCacheSave;
 
     public DockerCommands(final String dockerSocket, final String dockerRegistry) {
-        this.dockerSocket = dockerSocket;
-        this.dockerClient = newDockerClient(dockerSocket, dockerRegistry);
+        this(DockerConfiguration.create()
+                .withDockerSocket(dockerSocket)
+                .withDockerRegistry(dockerRegistry));
+    }
+
+    public DockerCommands(final DockerConfiguration config) {
+        this.execFactory = new JerseyDockerCmdExecFactory()
+                .withMaxTotalConnections(config.maxConnections())
+                .withMaxPerRouteConnections(config.maxConnections());
+        this.dockerClient = newDockerClient(config);
+        this.imageCache = config.imageCache();
+        this.imageCacheSave = config.imageCacheSave();
 
         ShutdownHookManager.addHook(1, this::cleanup);
     }
 
     private void cleanup() {
         Try.run(dockerClient::close);
-        logDockerClients.forEach(client -> Try.run(client::close));
     }
 
-    private DockerClient newDockerClient(final String dockerSocket, final String dockerRegistry) {
+    /**
+     * Creates the client shared by all commands and followed logs. Every followed log
+     * holds on to one pooled connection, so the pool is not limited per route.
+     */
+    private DockerClient newDockerClient(final DockerConfiguration config) {
         val dockerConfig = DefaultDockerClientConfig.createDefaultConfigBuilder()
-                .withDockerHost(dockerSocket)
+                .withDockerHost(config.dockerSocket())
                 .withDockerTlsVerify(VERIFY_TLS)
                 .withApiVersion(API_VERSION)
-                .withRegistryUrl(dockerRegistry)
+                .withRegistryUrl(config.dockerRegistry())
                 .build();
 
-        return DockerClientBuilder.getInstance(dockerConfig).build();
+        return DockerClientBuilder.getInstance(dockerConfig)
+                .withDockerCmdExecFactory(execFactory)
+                .build();
     }
 
+    /**
+     * Pulls the image from the registry. If an image cache is configured and the image is
+     * missing locally it is loaded from the cache instead, successfully pulled images are
+     * optionally saved to the cache.
+     */
     public void pullImage(final String image, final String tag) {
-        dockerClient.pullImageCmd(image + ":" + tag)
+        val imageRef = image + ":" + tag;
+        if (!isImageAvailable(image, tag) && loadCachedImage(image, tag)) {
+            return;
+        }
+
+        dockerClient.pullImageCmd(imageRef)
                 .exec(new NoLogPullImageResultCallback())
                 .awaitSuccess();
+
+        pulledImages.add(imageRef);
+        availableImages.add(imageRef);
+
+        if (imageCacheSave) {
+            imageCache.forEach(directory -> saveCachedImage(image, tag, directory));
+        }
     }
 
+    private boolean loadCachedImage(final String image, final String tag) {
+        val cachedImage = imageCache.map(directory -> cachedImagePath(directory, image, tag))
+                .filter(Files::isRegularFile);
+        if (cachedImage.isEmpty()) {
+            return false;
+        }
+
+        log.info("Loading image {}:{} from {}", image, tag, cachedImage.get());
+        try (val imageStream = new BufferedInputStream(Files.newInputStream(cachedImage.get()))) {
+            dockerClient.loadImageCmd(imageStream).exec();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to load cached image " + cachedImage.get(), e);
+        }
+
+        val imageRef = image + ":" + tag;
+        pulledImages.add(imageRef);
+        availableImages.add(imageRef);
+        return true;
+    }
+
+    private void saveCachedImage(final String image, final String tag, final Path directory) {
+        val cachedImage = cachedImagePath(directory, image, tag);
+        log.info("Saving image {}:{} to {}", image, tag, cachedImage);
+
+        try {
+            Files.createDirectories(directory);
+            val tempFile = Files.createTempFile(directory, cachedImage.getFileName().toString(), ".tmp");
+            try (val imageStream = dockerClient.saveImageCmd(image).withTag(tag).exec()) {
+                Files.copy(imageStream, tempFile, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(tempFile, cachedImage, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(tempFile);
+            }
+        } catch (final Exception e) {
+            log.warn("Failed to save image {}:{} to the image cache: {}", image, tag, e.getMessage());
+        }
+    }
+
+    private Path cachedImagePath(final Path directory, final String image, final String tag) {
+        return directory.resolve((image + "_" + tag).replaceAll("[^A-Za-z0-9._-]", "_") + ".tar");
+    }
+
+    /**
+     * Whether the image has been pulled by this instance.
+     */
+    public boolean isImagePulled(final String image, final String tag) {
+        return pulledImages.contains(image + ":" + tag);
+    }
+
+    /**
+     * @deprecated Use {@link #stopContainer(String, Option)}, this stops with the daemons default grace period.
+     */
+    @Deprecated
     public void stopContainer(final String id) {
-        dockerClient.stopContainerCmd(id).exec();
+        stopContainer(id, Option.none());
+    }
+
+    /**
+     * Stops the container, killing it if it did not stop within the given timeout.
+     * Without a timeout the daemons default grace period is used.
+     */
+    public void stopContainer(final String id, final Option<Duration> timeout) {
+        val stopCmd = dockerClient.stopContainerCmd(id);
+        timeout.forEach(duration -> stopCmd.withTimeout(timeoutSeconds(duration)));
+
+        try {
+            stopCmd.exec();
+        } catch (final NotModifiedException ignored) {
+            // Container already stopped
+        }
+    }
+
+    /**
+     * Docker only accepts whole seconds and treats zero as kill, so a sub-second
+     * timeout is rounded up instead of truncated.
+     */
+    static int timeoutSeconds(final Duration timeout) {
+        val seconds = timeout.getNano() > 0 ? timeout.getSeconds() + 1 : timeout.getSeconds();
+        return (int) Math.min(Math.max(seconds, 0), Integer.MAX_VALUE);
     }
 
+    /**
+     * Removes the container together with its anonymous volumes. Running
+     * containers are killed.
+     */
     public void removeContainer(final String id) {
-        dockerClient.removeContainerCmd(id).exec();
+        // Release the pooled connection of a followed log right away
+        Option.of(logStreams.remove(id)).forEach(logStream -> Try.run(logStream::close));
+        Option.of(eventStreams.remove(id)).forEach(eventStream -> Try.run(eventStream::close));
+
+        dockerClient.removeContainerCmd(id)
+                .withForce(true)
+                .withRemoveVolumes(true)
+                .exec();
     }
 
     public void startContainer(final String id) {
         dockerClient.startContainerCmd(id).exec();
     }
 
+    /**
+     * Whether the image is available locally. Positive results are cached for the
+     * lifetime of this instance.
+     */
     public boolean isImageAvailable(final String image, final String tag) {
+        val imageRef = image + ":" + tag;
+        if (availableImages.contains(imageRef)) {
+            return true;
+        }
+
         try {
-            dockerClient.inspectImageCmd(image + ":" + tag).exec();
+            dockerClient.inspectImageCmd(imageRef).exec();
+            availableImages.add(imageRef);
             return true;
         } catch (final Exception e) {
             return false;
         }
     }
 
-    public CreateContainerCmd createContainer(final String image) {
-        return dockerClient.createContainerCmd(image);
+    /**
+     * Paths of the volumes declared by the image, e.g. through a VOLUME instruction.
+     */
+    public List<String> imageVolumes(final String image, final String tag) {
+        val config = dockerClient.inspectImageCmd(image + ":" + tag).exec().getConfig();
+        if (config == null || config.getVolumes() == null) {
+            return List.empty();
+        }
+        return List.ofAll(config.getVolumes().keySet()).sorted();
+    }
+
+    /**
+     * Finds a running container carrying all of the given labels.
+     */
+    public Option<String> findRunningContainer(final Map<String, String> labels) {
+        val containers = dockerClient.listContainersCmd()
+                .withShowAll(false)
+                .withLabelFilter(labels.toJavaMap())
+                .exec();
+
+        return List.ofAll(containers).headOption().map(container -> container.getId());
+    }
+
+    public InspectContainerResponse inspectContainer(final String id) {
+        return dockerClient.inspectContainerCmd(id).exec();
     }
 
+    /**
+     * Commits the container to a local image. The container is paused while committing.
+     */
+    public void commitContainer(final String id, final String repository, final String tag, final Map<String, String> labels) {
+        dockerClient.commitCmd(id)
+                .withRepository(repository)
+                .withTag(tag)
+                .withLabels(labels.toJavaMap())
+                .withPause(true)
+                .exec();
+    }
+
+    /**
+     * Finds the repository tags of all local images carrying all of the given labels.
+     */
+    public List<String> findImages(final Map<String, String> labels) {
+        val images = dockerClient.listImagesCmd()
+                .withLabelFilter(labels.toJavaMap())
+                .exec();
+
+        return List.ofAll(images)
+                .filter(image -> image.getRepoTags() != null)
+                .flatMap(image -> List.of(image.getRepoTags()));
+    }
+
+    public void removeImage(final String image) {
+        dockerClient.removeImageCmd(image).exec();
+    }
+
+    public KrakenCreateContainerCmd createContainer(final String image) {
+        return new KrakenCreateContainerCmd(execFactory.createCreateContainerCmdExec(), image);
+    }
+
+    /**
+     * Subscribes to the health status events of the container. The returned future completes
+     * once the container reports healthy and fails if it dies first. Returns after the
+     * subscription is active, so it can be called right before starting the container.
+     */
+    public CompletableFuture<Void> awaitHealthy(final String id) {
+        val callback = dockerClient.eventsCmd()
+                .withContainerFilter(id)
+                .withEventFilter("health_status", "die")
+                .exec(new HealthStatusResultCallback(id));
+
+        eventStreams.put(id, callback);
+        callback.healthy().whenComplete((ignored, e) -> eventStreams.remove(id));
+
+        try {
+            if (!callback.awaitStarted(EVENTS_SUBSCRIBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                callback.healthy().completeExceptionally(new IllegalStateException(String.format(
+                        "Could not subscribe to the health events of container %s within %d seconds",
+                        id, EVENTS_SUBSCRIBE_TIMEOUT_SECONDS)));
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            callback.healthy().completeExceptionally(e);
+        }
+        return callback.healthy();
+    }
+
+    /**
+     * @deprecated Use {@link #logContainer(String, String, LogRingBuffer)}, this writes the lines to
+     * SLF4J through a pipeline shared by all callers that is never closed.
+     */
+    @Deprecated
     public void logContainer(final String id, final String logPrefix) {
-        val dockerClient = newDockerClient(dockerSocket, "");
-        logDockerClients = logDockerClients.append(dockerClient);
+        logContainer(id, logPrefix, defaultLogPipeline().channel(logPrefix));
+    }
 
-        dockerClient.logContainerCmd(id)
+    private static synchronized LogPipeline defaultLogPipeline() {
+        if (defaultLogPipeline == null) {
+            defaultLogPipeline = LogPipeline.defaultPipeline();
+        }
+        return defaultLogPipeline;
+    }
+
+    /**
+     * Follows the stdout and stderr of the container and writes them to the given log buffer.
+     */
+    public void logContainer(final String id, final String component, final LogRingBuffer buffer) {
+        val logStream = dockerClient.logContainerCmd(id)
+                .withFollowStream(true)
+                .withStdOut(true)
+                .withStdErr(true)
+                .exec(new LogContainerResultCallback(component, buffer));
+
+        logStreams.put(id, logStream);
+    }
+
+    /**
+     * Streams the raw stdout and stderr of the container, starting with its first line,
+     * to the given output until the returned handle is closed.
+     */
+    public Closeable followLog(final String id, final OutputStream output) {
+        return dockerClient.logContainerCmd(id)
                 .withFollowStream(true)
                 .withStdOut(true)
                 .withStdErr(true)
-                .exec(new LogContainerResultCallback(logPrefix));
+                .exec(new StreamLogResultCallback(output));
+    }
+
+    /**
+     * Prepares the exec of the command inside the container. Docker runs every exec instance
+     * only once, each run creates a new instance from the same configuration.
+     */
+    public CommandRunner.Execution prepareExec(final String id, final List<String> command) {
+        val execCreateCmd = dockerClient.execCreateCmd(id)
+                .withCmd(command.toJavaArray(String.class))
+                .withAttachStdout(true)
+                .withAttachStderr(true);
+
+        return timeout -> {
+            val execId = execCreateCmd.exec().getId();
+            val output = new ByteArrayOutputStream();
+
+            try (val callback = dockerClient.execStartCmd(execId).exec(new ExecStartResultCallback(output, output))) {
+                if (!callback.awaitCompletion(timeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    throw new TimeoutException("Exec of " + command.mkString(" ") + " did not exit within " + timeout);
+                }
+            }
+
+            val exitCode = dockerClient.inspectExecCmd(execId).exec().getExitCode();
+            if (exitCode == null || exitCode != 0) {
+                log.debug("Exec of {} exited with {}: {}", command.mkString(" "), exitCode, output.toString().trim());
+            }
+            return exitCode == null ? -1 : exitCode;
+        };
+    }
+
+    /**
+     * Creates a bridge network and returns its id.
+     */
+    public String createNetwork(final String name, final Map<String, String> labels) {
+        return dockerClient.createNetworkCmd()
+                .withName(name)
+                .withDriver("bridge")
+                .withCheckDuplicate(true)
+                .withLabels(labels.toJavaMap())
+                .exec()
+                .getId();
+    }
+
+    /**
+     * Lists all containers, running or not, that carry the label.
+     */
+    public List<Container> listContainers(final String label) {
+        return List.ofAll(dockerClient.listContainersCmd()
+                .withShowAll(true)
+                .withLabelFilter(label)
+                .exec());
+    }
+
+    /**
+     * Lists all networks that carry the label.
+     */
+    public List<Network> listNetworks(final String label) {
+        return List.ofAll(dockerClient.listNetworksCmd().exec())
+                .filter(network -> network.getLabels() != null && network.getLabels().containsKey(label));
+    }
+
+    public void removeNetwork(final String id) {
+        dockerClient.removeNetworkCmd(id).exec();
     }
 }
@@ -1,6 +1,13 @@
 package fabzo.kraken.handler.docker;
 
 import fabzo.kraken.handler.HandlerConfiguration;
+import fabzo.kraken.utils.PortAllocator;
+import fabzo.kraken.utils.PortRange;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+
+import java.nio.file.Path;
+import java.time.Duration;
 
 public class DockerConfiguration implements HandlerConfiguration {
     private static final String DOCKER_UNIX_SOCKET_FILE = "/var/run/docker.sock";
@@ -9,6 +16,18 @@ public class DockerConfiguration implements HandlerConfiguration {
 
     private String dockerSocket = DOCKER_HOST_UNIX;
     private String dockerRegistry = "https://registry.hub.docker.com/v1";
+    private Option<Duration> stopTimeout = Option.none();
+    private boolean containerReuse = false;
+    private int pullParallelism = 4;
+    private Option<Path> imageCache = Option.none();
+    private boolean imageCacheSave = false;
+    private int maxConnections = 100;
+    private List<PortRange> portRanges = List.empty();
+    private boolean dockerAssignedPorts = false;
+    private boolean environmentNetwork = false;
+    private boolean orphanReaping = false;
+    private Option<Duration> orphanMaxAge = Option.none();
+    private boolean watchdog = false;
 
     public static DockerConfiguration create() {
         return new DockerConfiguration();
@@ -31,4 +50,202 @@ public class DockerConfiguration implements HandlerConfiguration {
     public String dockerRegistry() {
         return dockerRegistry;
     }
+
+    public Option<Duration> stopTimeout() {
+        return stopTimeout;
+    }
+
+    /**
+     * Time a container is given to stop before it is killed. A timeout of zero
+     * kills and removes containers right away. Can be overridden per component.
+     * <br>
+     * Default: none (docker default of 10 seconds)
+     */
+    public DockerConfiguration withStopTimeout(final Duration stopTimeout) {
+        this.stopTimeout = Option.of(stopTimeout);
+        return this;
+    }
+
+    public boolean containerReuse() {
+        return containerReuse;
+    }
+
+    /**
+     * If enabled containers are labelled with a hash of their component configuration
+     * (image, tag, command, environment and ports) and kept running when the environment
+     * stops. The next run reattaches to a running container with the same hash instead
+     * of creating a new one and skips its wait functions.
+     * <br>
+     * Meant for local development where the same tests are run over and over again.
+     * <br>
+     * Default: false
+     */
+    public DockerConfiguration withContainerReuse(final boolean containerReuse) {
+        this.containerReuse = containerReuse;
+        return this;
+    }
+
+    public int pullParallelism() {
+        return pullParallelism;
+    }
+
+    /**
+     * Maximum number of images pulled concurrently before the components are started.
+     * <br>
+     * Default: 4
+     */
+    public DockerConfiguration withPullParallelism(final int pullParallelism) {
+        if (pullParallelism < 1) {
+            throw new IllegalArgumentException("Pull parallelism must be at least 1");
+        }
+        this.pullParallelism = pullParallelism;
+        return this;
+    }
+
+    public Option<Path> imageCache() {
+        return imageCache;
+    }
+
+    /**
+     * Directory containing image tarballs (as created by docker save). Images missing
+     * locally are loaded from this directory instead of being pulled from the registry,
+     * which allows environments to start without network access.
+     * <br>
+     * Default: none
+     */
+    public DockerConfiguration withImageCache(final Path imageCache) {
+        this.imageCache = Option.of(imageCache);
+        return this;
+    }
+
+    public boolean imageCacheSave() {
+        return imageCacheSave;
+    }
+
+    /**
+     * If enabled images pulled from the registry are saved to the image cache.
+     * <br>
+     * Default: false
+     */
+    public DockerConfiguration withImageCacheSave(final boolean imageCacheSave) {
+        this.imageCacheSave = imageCacheSave;
+        return this;
+    }
+
+    public int maxConnections() {
+        return maxConnections;
+    }
+
+    /**
+     * Size of the connection pool of the docker client shared by all commands. Each
+     * component that follows its logs permanently occupies one connection.
+     * <br>
+     * Default: 100
+     */
+    public DockerConfiguration withMaxConnections(final int maxConnections) {
+        if (maxConnections < 1) {
+            throw new IllegalArgumentException("Max connections must be at least 1");
+        }
+        this.maxConnections = maxConnections;
+        return this;
+    }
+
+    public List<PortRange> portRanges() {
+        return portRanges.isEmpty() ? List.of(PortAllocator.DEFAULT_RANGE) : portRanges;
+    }
+
+    /**
+     * Adds a range the host ports of containers are allocated from. Ranges are used in the
+     * order they have been added. Allocated ports are coordinated with other JVMs on the same
+     * host and are released once their container has been removed.
+     * <br>
+     * Default: 20000-32767
+     */
+    public DockerConfiguration withPortRange(final int from, final int to) {
+        this.portRanges = portRanges.append(PortRange.of(from, to));
+        return this;
+    }
+
+    public boolean dockerAssignedPorts() {
+        return dockerAssignedPorts;
+    }
+
+    /**
+     * If enabled ports are published without a host port and docker picks a free one. The
+     * assigned ports are read back once the container has been started, so a component cannot
+     * reference its own ports in its environment variables.
+     * <br>
+     * Default: false (host ports are allocated from the port ranges)
+     */
+    public DockerConfiguration withDockerAssignedPorts(final boolean dockerAssignedPorts) {
+        this.dockerAssignedPorts = dockerAssignedPorts;
+        return this;
+    }
+
+    public boolean environmentNetwork() {
+        return environmentNetwork;
+    }
+
+    /**
+     * If enabled every environment creates its own bridge network and attaches all of its
+     * containers to it, reachable by their component name. IP and port references in the
+     * environment variables of containers then resolve to the component name and container
+     * port, so containers talk to each other directly instead of through published ports.
+     * The network is removed together with the last container.
+     * <br>
+     * Default: false
+     */
+    public DockerConfiguration withEnvironmentNetwork(final boolean environmentNetwork) {
+        this.environmentNetwork = environmentNetwork;
+        return this;
+    }
+
+    public boolean orphanReaping() {
+        return orphanReaping;
+    }
+
+    /**
+     * If enabled containers and networks left behind by runs that did not shut down cleanly
+     * (e.g. killed JVMs) are removed before the first component is started. A resource is
+     * left behind if the process that created it ran on this host and is no longer alive,
+     * or if it is older than the orphan max age. Reusable containers are never removed.
+     * <br>
+     * Default: false
+     */
+    public DockerConfiguration withOrphanReaping(final boolean orphanReaping) {
+        this.orphanReaping = orphanReaping;
+        return this;
+    }
+
+    public Option<Duration> orphanMaxAge() {
+        return orphanMaxAge;
+    }
+
+    /**
+     * Age after which containers and networks are considered left behind, regardless of
+     * whether the process that created them is still alive. Needed to clean up after runs on
+     * other hosts sharing the docker daemon.
+     * <br>
+     * Default: none (only resources of dead processes on this host are removed)
+     */
+    public DockerConfiguration withOrphanMaxAge(final Duration orphanMaxAge) {
+        this.orphanMaxAge = Option.of(orphanMaxAge);
+        return this;
+    }
+
+    public boolean watchdog() {
+        return watchdog;
+    }
+
+    /**
+     * If enabled a watchdog process is started per environment. It removes the containers
+     * and the network of the environment as soon as this JVM exits, even if it is killed and
+     * shutdown hooks do not run.
+     * <br>
+     * Default: false
+     */
+    public DockerConfiguration withWatchdog(final boolean watchdog) {
+        this.watchdog = watchdog;
+        return this;
+    }
 }
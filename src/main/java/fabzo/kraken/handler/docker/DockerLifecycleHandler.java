@@ -1,28 +1,68 @@
 package fabzo.kraken.handler.docker;
 
 import com.github.dockerjava.api.command.CreateContainerResponse;
+import com.github.dockerjava.api.command.InspectContainerResponse;
+import com.github.dockerjava.api.exception.DockerException;
 import com.github.dockerjava.api.exception.NotFoundException;
+import com.github.dockerjava.api.model.AccessMode;
+import com.github.dockerjava.api.model.Bind;
 import com.github.dockerjava.api.model.ExposedPort;
 import com.github.dockerjava.api.model.PortBinding;
 import com.github.dockerjava.api.model.Ports;
+import com.github.dockerjava.api.model.Volume;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import fabzo.kraken.EnvironmentContext;
 import fabzo.kraken.components.ComponentState;
 import fabzo.kraken.components.DockerComponent;
+import fabzo.kraken.components.HealthCheck;
 import fabzo.kraken.components.InfrastructureComponent;
+import fabzo.kraken.components.Mount;
 import fabzo.kraken.handler.AbstractLifecycleHandler;
-import fabzo.kraken.utils.Utils;
+import fabzo.kraken.handler.LifecycleStages;
+import fabzo.kraken.utils.PortAllocator;
+import fabzo.kraken.utils.ResourceOwner;
+import io.vavr.collection.HashMap;
+import io.vavr.collection.HashSet;
 import io.vavr.collection.List;
+import io.vavr.collection.Map;
+import io.vavr.collection.Set;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
+import java.io.OutputStream;
+import java.time.Duration;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
 /**
  * Lifecycle handler for docker.
  */
 @Slf4j
 public class DockerLifecycleHandler extends AbstractLifecycleHandler {
+    public static final String LABEL_CONFIG_HASH = "kraken.config-hash";
+    public static final String LABEL_CHECKPOINT = "kraken.checkpoint";
+    private static final String CHECKPOINT_REPOSITORY = "kraken-checkpoint/";
+    private static final Pattern PORT_REF = Pattern.compile("\\$\\{([^.}]+)\\.ports\\.([^.}]+)\\.from}");
+    private static final int PORT_CONFLICT_ATTEMPTS = 3;
+
     private final DockerConfiguration config;
     private DockerCommands dockerCommands;
     private List<String> managedContainers = List.empty();
+    private List<String> reusedContainers = List.empty();
+    private List<String> restoredContainers = List.empty();
+    private Map<String, String> pendingCheckpoints = HashMap.empty();
+    private Map<String, List<Integer>> allocatedPorts = HashMap.empty();
+    private Map<String, String> networks = HashMap.empty();
+    private Map<String, Set<String>> networkMembers = HashMap.empty();
+    private Map<String, OutputStream> watchdogs = HashMap.empty();
+    private Map<String, Set<String>> watchdogMembers = HashMap.empty();
+    private boolean orphansReaped = false;
 
     protected DockerLifecycleHandler(final DockerConfiguration config) {
         this.config = config;
@@ -36,17 +76,124 @@ public class DockerLifecycleHandler extends AbstractLifecycleHandler {
     public void stop(final InfrastructureComponent component, final EnvironmentContext context) {
         val dockerC = (DockerComponent) component;
 
-        if (managedContainers.contains(dockerC.id())) {
-            log.info("[stopping] {}", component.name());
+        if (release(dockerC.id())) {
+            stopContainer(dockerC);
+            removeContainer(dockerC, context);
+        } else {
+            detach(dockerC, context);
+        }
+        leaveWatchdog(dockerC, context);
+    }
+
+    /**
+     * Stops and removes the container as separate stages, so that removing one container
+     * does not wait for other containers to be stopped.
+     */
+    @Override
+    public CompletableFuture<Void> stopAsync(final InfrastructureComponent component, final EnvironmentContext context, final Executor executor) {
+        val dockerC = (DockerComponent) component;
+
+        if (!release(dockerC.id())) {
+            return CompletableFuture.runAsync(() -> {
+                detach(dockerC, context);
+                leaveWatchdog(dockerC, context);
+            }, executor);
+        }
 
-            dockerCommands.stopContainer(dockerC.id());
-            component.setState(ComponentState.STOPPED);
+        return CompletableFuture.runAsync(() -> stopContainer(dockerC), executor)
+                .thenRunAsync(() -> removeContainer(dockerC, context), executor)
+                .thenRun(() -> leaveWatchdog(dockerC, context));
+    }
 
-            dockerCommands.removeContainer(dockerC.id());
-            component.setState(ComponentState.DESTROYED);
+    private void stopContainer(final DockerComponent dockerC) {
+        val stopTimeout = dockerC.stopTimeout().orElse(config.stopTimeout());
 
-            managedContainers = managedContainers.remove(dockerC.id());
+        if (stopTimeout.exists(Duration.ZERO::equals)) {
+            log.info("[killing] {}", dockerC.name());
+        } else {
+            log.info("[stopping] {}", dockerC.name());
+            dockerCommands.stopContainer(dockerC.id(), stopTimeout);
         }
+        dockerC.setState(ComponentState.STOPPED);
+    }
+
+    private void removeContainer(final DockerComponent dockerC, final EnvironmentContext context) {
+        dockerCommands.removeContainer(dockerC.id());
+        dockerC.setState(ComponentState.DESTROYED);
+        releasePorts(containerName(dockerC, context));
+        leaveNetwork(dockerC, context);
+    }
+
+    /**
+     * Reused containers keep running for later runs, only the host ports reserved when
+     * reattaching to them are returned. Another run reattaching to the container reserves
+     * them again.
+     */
+    private void detach(final DockerComponent dockerC, final EnvironmentContext context) {
+        releasePorts(containerName(dockerC, context));
+    }
+
+    private String containerName(final DockerComponent dockerC, final EnvironmentContext ctx) {
+        return String.format("%s_%s", ctx.salt(), dockerC.name());
+    }
+
+    private synchronized void allocated(final String name, final int port) {
+        allocatedPorts = allocatedPorts.put(name, allocatedPorts.get(name).getOrElse(List.empty()).append(port));
+    }
+
+    private synchronized void releasePorts(final String name) {
+        allocatedPorts.get(name).forEach(ports -> ports.forEach(PortAllocator.shared()::release));
+        allocatedPorts = allocatedPorts.remove(name);
+    }
+
+    /**
+     * Forgets the ports without releasing them, they stay allocated for the lifetime of the JVM.
+     */
+    private synchronized void abandonPorts(final String name) {
+        allocatedPorts = allocatedPorts.remove(name);
+    }
+
+    private synchronized void manage(final String id) {
+        managedContainers = managedContainers.append(id);
+    }
+
+    private synchronized void reuse(final String id) {
+        reusedContainers = reusedContainers.append(id);
+    }
+
+    private synchronized boolean isReused(final String id) {
+        return reusedContainers.contains(id);
+    }
+
+    private synchronized void restored(final String id) {
+        restoredContainers = restoredContainers.append(id);
+    }
+
+    private synchronized boolean isRestored(final String id) {
+        return restoredContainers.contains(id);
+    }
+
+    private synchronized void checkpointPending(final String id, final String checkpointTag) {
+        pendingCheckpoints = pendingCheckpoints.put(id, checkpointTag);
+    }
+
+    private synchronized Option<String> takePendingCheckpoint(final String id) {
+        val checkpointTag = pendingCheckpoints.get(id);
+        pendingCheckpoints = pendingCheckpoints.remove(id);
+        return checkpointTag;
+    }
+
+    @Override
+    protected boolean isReady(final InfrastructureComponent component) {
+        return component instanceof DockerComponent && isReused(((DockerComponent) component).id());
+    }
+
+    private synchronized boolean release(final String id) {
+        if (!managedContainers.contains(id)) {
+            return false;
+        }
+        managedContainers = managedContainers.remove(id);
+        return true;
     }
 
     @Override
@@ -63,68 +210,525 @@ public class DockerLifecycleHandler extends AbstractLifecycleHandler {
             return false;
         }
 
+        create(dockerC, ctx);
+        start(dockerC, ctx);
+
+        return true;
+    }
+
+    /**
+     * Creates and starts the container as separate stages so that image pulls and
+     * container creation of different components can overlap.
+     */
+    @Override
+    public LifecycleStages runAsync(final InfrastructureComponent component, final EnvironmentContext ctx, final Executor executor) {
+        throwIfNotSupported(component);
+        val dockerC = (DockerComponent) component;
+
+        if (isRunning(dockerC) || isStopped(dockerC)) {
+            return super.runAsync(component, ctx, executor);
+        }
+
+        val created = CompletableFuture.runAsync(() -> create(dockerC, ctx), executor);
+        val started = created.thenApplyAsync(ignored -> {
+            start(dockerC, ctx);
+            return true;
+        }, executor);
+
+        return stages(component, ctx, created, started, executor);
+    }
+
+    private void create(final DockerComponent dockerC, final EnvironmentContext ctx) {
         ensureDockerCommands();
 
         dockerC.setState(ComponentState.CREATING);
+
+        if (config.containerReuse()) {
+            val configHash = ConfigurationHash.of(dockerC, ctx);
+            val existing = dockerCommands.findRunningContainer(HashMap.of(LABEL_CONFIG_HASH, configHash));
+            if (existing.isDefined()) {
+                reattach(dockerC, ctx, existing.get());
+                return;
+            }
+        }
+
+        if (dockerC.isCheckpoint()) {
+            val checkpointTag = ConfigurationHash.ofCheckpoint(dockerC);
+            val repository = checkpointRepository(dockerC);
+
+            if (dockerCommands.isImageAvailable(repository, checkpointTag)) {
+                throwIfDeclaresVolumes(dockerC, repository, checkpointTag);
+                log.info("Creating {} from checkpoint {}:{}", dockerC.name(), repository, checkpointTag);
+                createContainer(dockerC, ctx, repository + ":" + checkpointTag);
+                restored(dockerC.id());
+                return;
+            }
+
+            pullImageIfRequired(dockerC);
+            throwIfDeclaresVolumes(dockerC, dockerC.image(), dockerC.tag());
+            createContainer(dockerC, ctx, dockerC.image() + ":" + dockerC.tag());
+            checkpointPending(dockerC.id(), checkpointTag);
+            return;
+        }
+
         pullImageIfRequired(dockerC);
-        createContainer(dockerC, ctx);
+        createContainer(dockerC, ctx, dockerC.image() + ":" + dockerC.tag());
+    }
 
-        log.info("Starting {}", dockerC.name());
-        dockerC.setState(ComponentState.STARTING);
-        dockerCommands.startContainer(dockerC.id());
-        dockerC.setState(ComponentState.STARTED);
+    /**
+     * Executes the init hook and commits the container to a checkpoint image unless the
+     * container has been reused or was created from a checkpoint.
+     */
+    @Override
+    protected void afterReady(final InfrastructureComponent component, final EnvironmentContext ctx) {
+        val dockerC = (DockerComponent) component;
+
+        if (isReused(dockerC.id()) || isRestored(dockerC.id())) {
+            return;
+        }
+
+        dockerC.initHook().forEach(initHook -> {
+            log.info("Initializing {}", dockerC.name());
+            initHook.accept(ctx, dockerC);
+        });
+
+        takePendingCheckpoint(dockerC.id()).forEach(checkpointTag -> checkpoint(dockerC, checkpointTag));
+    }
+
+    private void checkpoint(final DockerComponent dockerC, final String checkpointTag) {
+        val repository = checkpointRepository(dockerC);
+        log.info("Committing {} to checkpoint {}:{}", dockerC.name(), repository, checkpointTag);
+
+        val labels = HashMap.of(LABEL_CHECKPOINT, repository);
+        dockerCommands.commitContainer(dockerC.id(), repository, checkpointTag, labels);
+
+        // Remove checkpoints of previous configurations
+        dockerCommands.findImages(labels)
+                .filter(image -> !image.equals(repository + ":" + checkpointTag))
+                .forEach(image -> {
+                    log.info("Removing outdated checkpoint {}", image);
+                    Try.run(() -> dockerCommands.removeImage(image))
+                            .onFailure(e -> log.warn("Failed to remove outdated checkpoint {}: {}", image, e.getMessage()));
+                });
+    }
+
+    /**
+     * docker commit does not capture the content of volumes. A container created from the
+     * checkpoint would skip its init hook and start with empty volumes, e.g. an empty
+     * database directory for the mysql and postgres images.
+     */
+    private void throwIfDeclaresVolumes(final DockerComponent dockerC, final String image, final String tag) {
+        val volumes = dockerCommands.imageVolumes(image, tag);
+        if (!volumes.isEmpty()) {
+            throw new IllegalStateException(String.format(
+                    "Cannot checkpoint %s, image %s:%s declares the volumes %s whose content is not part of a checkpoint",
+                    dockerC.name(), image, tag, volumes.mkString(", ")));
+        }
+    }
+
+    private String checkpointRepository(final DockerComponent dockerC) {
+        return CHECKPOINT_REPOSITORY + dockerC.name().toLowerCase().replaceAll("[^a-z0-9._-]", "-");
+    }
+
+    private void reattach(final DockerComponent dockerC, final EnvironmentContext ctx, final String id) {
+        log.info("Reusing running container {} for {}", id, dockerC.name());
+        dockerC.setId(id);
+        reuse(id);
+
+        registerPorts(dockerC, ctx, dockerCommands.inspectContainer(id));
+    }
+
+    /**
+     * Registers the host ports docker bound to the containers ports with the context.
+     */
+    private void registerPorts(final DockerComponent dockerC, final EnvironmentContext ctx, final InspectContainerResponse container) {
+        val bindings = HashMap.ofAll(container.getNetworkSettings().getPorts().getBindings());
+
+        dockerC.ports().forEach((portName, containerPort) -> {
+            val hostPort = bindings.get(ExposedPort.tcp(containerPort))
+                    .flatMap(portBindings -> List.of(portBindings).headOption())
+                    .map(binding -> Integer.valueOf(binding.getHostPortSpec()));
+
+            if (hostPort.isEmpty()) {
+                throw new IllegalStateException(String.format(
+                        "Port %s (%d) of %s is not bound to a host port", portName, containerPort, dockerC.name()));
+            }
+            if (PortAllocator.shared().reserve(hostPort.get())) {
+                allocated(containerName(dockerC, ctx), hostPort.get());
+            }
+            ctx.addPort(dockerC.name(), portName, hostPort.get(), containerPort);
+        });
+    }
+
+    /**
+     * Starts the container. Allocated host ports are not probed, if one of them turns out to
+     * be in use (e.g. by a container left behind by another JVM) the container is created
+     * again with different ports.
+     */
+    private void startContainer(final DockerComponent dockerC, final EnvironmentContext ctx) {
+        for (int attempt = 1; ; attempt++) {
+            final Option<CompletableFuture<Void>> healthy = healthCheckOf(dockerC).isDefined()
+                    ? Option.of(dockerCommands.awaitHealthy(dockerC.id()))
+                    : Option.none();
+            healthy.forEach(status -> ctx.setHealthStatus(dockerC.name(), status));
+
+            try {
+                dockerCommands.startContainer(dockerC.id());
+                return;
+            } catch (final DockerException e) {
+                // A container that did not start never becomes healthy, report why
+                healthy.forEach(status -> status.completeExceptionally(e));
+                if (config.dockerAssignedPorts() || attempt == PORT_CONFLICT_ATTEMPTS || !isPortConflict(e)) {
+                    throw e;
+                }
+                log.warn("A host port of {} is already in use, creating it with different ports: {}", dockerC.name(), e.getMessage());
+                recreateContainer(dockerC, ctx);
+            }
+        }
+    }
+
+    private static boolean isPortConflict(final DockerException e) {
+        val message = Option.of(e.getMessage()).getOrElse("");
+        return message.contains("port is already allocated") || message.contains("address already in use");
+    }
+
+    private void recreateContainer(final DockerComponent dockerC, final EnvironmentContext ctx) {
+        val previousId = dockerC.id();
+        val image = dockerCommands.inspectContainer(previousId).getConfig().getImage();
+        dockerCommands.removeContainer(previousId);
+
+        // The ports are in use by something this JVM does not know of, keep them from being allocated again
+        abandonPorts(containerName(dockerC, ctx));
+        createContainer(dockerC, ctx, image);
 
+        if (isRestored(previousId)) {
+            restored(dockerC.id());
+        }
+        takePendingCheckpoint(previousId).forEach(checkpointTag -> checkpointPending(dockerC.id(), checkpointTag));
+    }
+
+    /**
+     * Streams the log of followed components to all sinks. The logs of the other components
+     * are only streamed when a store keeps them.
+     */
+    private void followLogs(final DockerComponent dockerC, final EnvironmentContext ctx) {
         if (dockerC.isFollowLogs()) {
-            dockerCommands.logContainer(dockerC.id(), dockerC.name());
+            dockerCommands.logContainer(dockerC.id(), dockerC.name(), ctx.logs().channel(dockerC.name()));
+        } else if (ctx.logs().hasStores()) {
+            dockerCommands.logContainer(dockerC.id(), dockerC.name(), ctx.logs().storeChannel(dockerC.name()));
         }
+    }
 
-        managedContainers = managedContainers.append(dockerC.id());
-        ctx.registerShutdownHook(() -> stop(dockerC, ctx));
+    private void start(final DockerComponent dockerC, final EnvironmentContext ctx) {
+        if (isReused(dockerC.id())) {
+            dockerC.setState(ComponentState.STARTED);
+            ctx.setCommandRunner(dockerC.name(), command -> dockerCommands.prepareExec(dockerC.id(), command));
+            followLogs(dockerC, ctx);
+            return;
+        }
 
-        return true;
+        log.info("Starting {}", dockerC.name());
+        dockerC.setState(ComponentState.STARTING);
+        startContainer(dockerC, ctx);
+        if (config.dockerAssignedPorts()) {
+            registerPorts(dockerC, ctx, dockerCommands.inspectContainer(dockerC.id()));
+        }
+        dockerC.setState(ComponentState.STARTED);
+        ctx.setLogSource(dockerC.name(), output -> dockerCommands.followLog(dockerC.id(), output));
+        ctx.setCommandRunner(dockerC.name(), command -> dockerCommands.prepareExec(dockerC.id(), command));
+
+        followLogs(dockerC, ctx);
+
+        if (!config.containerReuse()) {
+            // Reusable containers are kept running for the next run
+            manage(dockerC.id());
+            ctx.registerShutdownHook(() -> stop(dockerC, ctx));
+        }
     }
 
-    private void createContainer(final DockerComponent dockerC, final EnvironmentContext ctx) {
+    private void createContainer(final DockerComponent dockerC, final EnvironmentContext ctx, final String image) {
         log.debug("Creating {}", dockerC.name());
-        final CreateContainerResponse createResult = dockerCommands
-                .createContainer(dockerC.image() + ":" + dockerC.tag())
-                .withName(String.format("%s_%s", ctx.salt(), dockerC.name()))
+        val createCmd = dockerCommands.createContainer(image);
+        healthCheckOf(dockerC).forEach(createCmd::withHealthCheck);
+        if (config.environmentNetwork()) {
+            createCmd.withNetwork(joinNetwork(dockerC, ctx), dockerC.name());
+        }
+        dockerC.cpus().forEach(createCmd::withCpus);
+        dockerC.memory().forEach(createCmd::withMemoryLimit);
+        dockerC.mounts()
+                .filter(mount -> mount.type() == Mount.Type.TMPFS)
+                .forEach(mount -> createCmd.withTmpfs(mount.target(), mount.size().map(size -> "size=" + size).getOrElse("")));
+
+        final CreateContainerResponse createResult = createCmd
+                .withName(containerName(dockerC, ctx))
                 .withPortBindings(buildPortBindings(dockerC, ctx, dockerC))
                 .withEnv(buildEnvironment(ctx, dockerC))
+                .withBinds(buildBinds(dockerC))
+                .withLabels(buildLabels(ctx, dockerC).toJavaMap())
                 .exec();
 
         dockerC.setId(createResult.getId());
     }
 
-    private void pullImageIfRequired(final DockerComponent dockerC) {
+    /**
+     * Returns the declared health check of the component, or the one generated from its
+     * waits.
+     */
+    private Option<HealthCheck> healthCheckOf(final DockerComponent dockerC) {
+        if (dockerC.healthCheck().isDefined() || !dockerC.isHealthCheckFromWaits()) {
+            return dockerC.healthCheck();
+        }
+        return Option.of(HealthChecks.fromWaits(dockerC));
+    }
+
+    /**
+     * Pulls the images of all given docker components that are missing locally or are
+     * forced to be pulled. Each distinct image is pulled once, up to the configured
+     * number of pulls run concurrently.
+     */
+    @Override
+    public void prepare(final List<InfrastructureComponent> components, final EnvironmentContext ctx) {
+        val dockerComponents = components
+                .filter(DockerComponent.class::isInstance)
+                .map(DockerComponent.class::cast)
+                .distinctBy(dockerC -> dockerC.image() + ":" + dockerC.tag());
+
+        if (dockerComponents.isEmpty()) {
+            return;
+        }
+        ensureDockerCommands();
+        reapOrphans();
+        if (config.watchdog()) {
+            ensureWatchdog(ctx, components.map(InfrastructureComponent::name));
+        }
+
+        val pulls = dockerComponents
+                .filter(this::requiresPull)
+                .map(dockerC -> (Callable<Void>) () -> {
+                    pullImageIfRequired(dockerC);
+                    return null;
+                });
+
+        if (pulls.isEmpty()) {
+            return;
+        }
+
+        log.info("Pulling {} image(s)", pulls.size());
+        val threadFactory = new ThreadFactoryBuilder()
+                .setNameFormat("kraken-pull-%d")
+                .setDaemon(true)
+                .build();
+        val executor = Executors.newFixedThreadPool(Math.min(config.pullParallelism(), pulls.size()), threadFactory);
+        try {
+            List.ofAll(executor.invokeAll(pulls.toJavaList())).forEach(pull -> Try.of(pull::get)
+                    .onFailure(e -> log.warn("Failed to pull image up front: {}", e.getMessage())));
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    /**
+     * Removes the containers and networks of runs that did not shut down cleanly, once per handler.
+     */
+    private synchronized void reapOrphans() {
+        if (!config.orphanReaping() || orphansReaped) {
+            return;
+        }
+        orphansReaped = true;
+
+        val owner = ResourceOwner.current();
+        val containers = dockerCommands.listContainers(ResourceOwner.LABEL_SALT)
+                .filter(container -> !container.getLabels().containsKey(LABEL_CONFIG_HASH))
+                .filter(container -> owner.isOrphaned(container.getLabels(), config.orphanMaxAge()));
+        val networks = dockerCommands.listNetworks(ResourceOwner.LABEL_SALT)
+                .filter(network -> owner.isOrphaned(network.getLabels(), config.orphanMaxAge()));
+
+        if (containers.isEmpty() && networks.isEmpty()) {
+            return;
+        }
+
+        log.info("Removing {} container(s) and {} network(s) left behind by previous runs", containers.size(), networks.size());
+        containers.forEach(container -> Try.run(() -> dockerCommands.removeContainer(container.getId()))
+                .onFailure(e -> log.warn("Failed to remove container {}: {}", container.getId(), e.getMessage())));
+        networks.forEach(network -> Try.run(() -> dockerCommands.removeNetwork(network.getId()))
+                .onFailure(e -> log.warn("Failed to remove network {}: {}", network.getId(), e.getMessage())));
+    }
+
+    private synchronized void ensureWatchdog(final EnvironmentContext ctx, final List<String> names) {
+        val salt = ctx.salt();
+        if (!watchdogs.containsKey(salt)) {
+            log.debug("Starting watchdog for {}", salt);
+            watchdogs = watchdogs.put(salt, DockerWatchdog.start(config, salt));
+        }
+        watchdogMembers = watchdogMembers.put(salt, watchdogMembers.get(salt).getOrElse(HashSet.empty()).addAll(names));
+    }
+
+    /**
+     * Ends the watchdog of the environment once all of its components have been stopped.
+     * Closing its input lets the watchdog process remove what is left and exit.
+     */
+    private void leaveWatchdog(final DockerComponent dockerC, final EnvironmentContext ctx) {
+        final Option<OutputStream> watchdog;
+        synchronized (this) {
+            val salt = ctx.salt();
+            val members = watchdogMembers.get(salt).map(names -> names.remove(dockerC.name()));
+            if (members.isEmpty() || !members.get().isEmpty()) {
+                watchdogMembers = members.isEmpty() ? watchdogMembers : watchdogMembers.put(salt, members.get());
+                return;
+            }
+
+            watchdog = watchdogs.get(salt);
+            watchdogs = watchdogs.remove(salt);
+            watchdogMembers = watchdogMembers.remove(salt);
+        }
+
+        log.debug("Stopping watchdog for {}", ctx.salt());
+        watchdog.forEach(input -> Try.run(input::close));
+    }
+
+    private boolean requiresPull(final DockerComponent dockerC) {
         val image = dockerC.image();
         val tag = dockerC.tag();
 
-        if (dockerC.isForcePull() || dockerCommands.isImageAvailable(image, tag)) {
-            log.info("Pulling image {}:{}", image, tag);
+        if (dockerC.isForcePull()) {
+            return !dockerCommands.isImagePulled(image, tag);
+        }
+        return !dockerCommands.isImageAvailable(image, tag);
+    }
+
+    private void pullImageIfRequired(final DockerComponent dockerC) {
+        if (requiresPull(dockerC)) {
+            log.info("Pulling image {}:{}", dockerC.image(), dockerC.tag());
             try {
-                dockerCommands.pullImage(image, tag);
+                dockerCommands.pullImage(dockerC.image(), dockerC.tag());
             } catch (final NotFoundException e) {
                 log.warn("Cannot pull image: {}", e.getMessage());
             }
         }
     }
 
-    private void ensureDockerCommands() {
+    private synchronized void ensureDockerCommands() {
         if (dockerCommands == null) {
-            dockerCommands = new DockerCommands(config.dockerSocket(), config.dockerRegistry());
+            dockerCommands = new DockerCommands(config);
+        }
+    }
+
+    private Map<String, String> buildLabels(final EnvironmentContext ctx, final DockerComponent dockerC) {
+        Map<String, String> labels = ResourceOwner.current().labels(ctx.salt());
+        if (config.containerReuse()) {
+            labels = labels.put(LABEL_CONFIG_HASH, ConfigurationHash.of(dockerC, ctx));
         }
+        return labels;
+    }
+
+    /**
+     * Returns the network of the environment, creating it for the first container.
+     */
+    private synchronized String joinNetwork(final DockerComponent dockerC, final EnvironmentContext ctx) {
+        if (config.containerReuse()) {
+            throw new IllegalStateException("Container reuse cannot be combined with an environment network");
+        }
+
+        val salt = ctx.salt();
+        if (!networks.containsKey(salt)) {
+            val name = "kraken_" + salt;
+            log.info("Creating network {}", name);
+            networks = networks.put(salt, dockerCommands.createNetwork(name, ResourceOwner.current().labels(salt)));
+        }
+
+        networkMembers = networkMembers.put(salt, networkMembers.get(salt).getOrElse(HashSet.empty()).add(dockerC.name()));
+        return networks.get(salt).get();
+    }
+
+    /**
+     * Removes the network of the environment once its last container has been removed.
+     */
+    private void leaveNetwork(final DockerComponent dockerC, final EnvironmentContext ctx) {
+        final Option<String> network;
+        synchronized (this) {
+            val salt = ctx.salt();
+            val members = networkMembers.get(salt).map(names -> names.remove(dockerC.name()));
+            if (members.isEmpty() || !members.get().isEmpty()) {
+                networkMembers = members.isEmpty() ? networkMembers : networkMembers.put(salt, members.get());
+                return;
+            }
+
+            network = networks.get(salt);
+            networks = networks.remove(salt);
+            networkMembers = networkMembers.remove(salt);
+        }
+
+        network.forEach(id -> Try.run(() -> dockerCommands.removeNetwork(id))
+                .onFailure(e -> log.warn("Failed to remove network {}: {}", id, e.getMessage())));
+    }
+
+    private synchronized boolean isNetworkMember(final EnvironmentContext ctx, final String name) {
+        return networkMembers.get(ctx.salt()).exists(names -> names.contains(name));
     }
 
     private java.util.List<String> buildEnvironment(final EnvironmentContext ctx, final DockerComponent dockerC) {
         return dockerC.env().foldRight(List.<String>empty(), (nameValue, list) -> {
-            return list.append(String.format("%s=%s", nameValue._1, ctx.resolve(nameValue._2)));
+            return list.append(String.format("%s=%s", nameValue._1, resolve(ctx, nameValue._2)));
         }).toJavaList();
     }
 
+    /**
+     * Resolves references to components sharing the network of the environment to their
+     * name and container port, all other references to their IP and host port.
+     */
+    private String resolve(final EnvironmentContext ctx, final String value) {
+        if (!config.environmentNetwork()) {
+            return ctx.resolve(value);
+        }
+
+        Map<String, String> overrides = HashMap.empty();
+        for (final String name : EnvironmentContext.referencedComponents(value)) {
+            if (isNetworkMember(ctx, name)) {
+                overrides = overrides.put(String.format(EnvironmentContext.IP_REF, name), name);
+            }
+        }
+
+        final Matcher matcher = PORT_REF.matcher(value);
+        while (matcher.find()) {
+            val name = matcher.group(1);
+            val portName = matcher.group(2);
+            val containerPort = ctx.containerPort(name, portName);
+            if (isNetworkMember(ctx, name) && containerPort.isDefined()) {
+                overrides = overrides.put(String.format(EnvironmentContext.PORT_REF_FROM, name, portName),
+                        String.valueOf(containerPort.get()));
+            }
+        }
+
+        return ctx.resolve(value, overrides);
+    }
+
+    /**
+     * Bind mounts and named volumes of the component, docker does not distinguish them.
+     */
+    private java.util.List<Bind> buildBinds(final DockerComponent dockerC) {
+        return dockerC.mounts()
+                .filter(mount -> mount.type() != Mount.Type.TMPFS)
+                .map(mount -> new Bind(mount.source().get(), new Volume(mount.target()),
+                        mount.isReadOnly() ? AccessMode.ro : AccessMode.rw))
+                .toJavaList();
+    }
+
+    /**
+     * Binds every port of the component to an allocated host port, or leaves picking the host
+     * port to docker. Docker assigned ports are registered with the context after the start.
+     */
     private java.util.List<PortBinding> buildPortBindings(final InfrastructureComponent component, final EnvironmentContext ctx, final DockerComponent dockerC) {
+        if (config.dockerAssignedPorts()) {
+            return dockerC.ports().values()
+                    .map(containerPort -> new PortBinding(Ports.Binding.bindIp("0.0.0.0"), new ExposedPort(containerPort)))
+                    .toJavaList();
+        }
+
         return dockerC.ports().foldRight(List.<PortBinding>empty(), (namePort, list) -> {
-            final Integer highPort = Utils.getAvailablePort().get();
+            final int highPort = PortAllocator.shared().allocate(config.portRanges());
+            allocated(containerName(dockerC, ctx), highPort);
             ctx.addPort(component.name(), namePort._1, highPort, namePort._2);
             return list.append(createPortBinding(highPort, namePort._2));
         }).toJavaList();
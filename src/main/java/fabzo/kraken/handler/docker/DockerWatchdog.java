@@ -0,0 +1,73 @@
+package fabzo.kraken.handler.docker;
+
+import fabzo.kraken.utils.ResourceOwner;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Paths;
+
+/**
+ * Process that removes the containers and the network of an environment once the JVM that
+ * started it exits. The JVM holds the standard input of the watchdog open, the operating
+ * system closes it when the JVM exits for whatever reason.
+ */
+@Slf4j
+public class DockerWatchdog {
+
+    private DockerWatchdog() {
+    }
+
+    /**
+     * Starts the watchdog for the environment with the given salt. The returned stream has to
+     * be kept referenced until the JVM exits, closing it triggers the cleanup.
+     */
+    public static OutputStream start(final DockerConfiguration config, final String salt) {
+        val java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        val builder = new ProcessBuilder(java,
+                "-Xmx32m",
+                "-cp", System.getProperty("java.class.path"),
+                DockerWatchdog.class.getName(),
+                config.dockerSocket(),
+                salt);
+        builder.redirectOutput(ProcessBuilder.Redirect.INHERIT);
+        builder.redirectError(ProcessBuilder.Redirect.INHERIT);
+
+        try {
+            return builder.start().getOutputStream();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to start watchdog for " + salt, e);
+        }
+    }
+
+    public static void main(final String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("Usage: " + DockerWatchdog.class.getSimpleName() + " <docker socket> <salt>");
+            System.exit(1);
+        }
+
+        // Blocks until the owning JVM exited
+        while (System.in.read() >= 0) {
+            // Nothing is ever written, drain just in case
+        }
+
+        val salt = args[1];
+        val dockerCommands = new DockerCommands(DockerConfiguration.create().withDockerSocket(args[0]));
+
+        dockerCommands.listContainers(ResourceOwner.LABEL_SALT)
+                .filter(container -> salt.equals(container.getLabels().get(ResourceOwner.LABEL_SALT)))
+                .filter(container -> !container.getLabels().containsKey(DockerLifecycleHandler.LABEL_CONFIG_HASH))
+                .forEach(container -> Try.run(() -> dockerCommands.removeContainer(container.getId()))
+                        .onFailure(e -> log.warn("Failed to remove container {}: {}", container.getId(), e.getMessage())));
+
+        dockerCommands.listNetworks(ResourceOwner.LABEL_SALT)
+                .filter(network -> salt.equals(network.getLabels().get(ResourceOwner.LABEL_SALT)))
+                .forEach(network -> Try.run(() -> dockerCommands.removeNetwork(network.getId()))
+                        .onFailure(e -> log.warn("Failed to remove network {}: {}", network.getId(), e.getMessage())));
+
+        System.exit(0);
+    }
+}
@@ -0,0 +1,79 @@
+package fabzo.kraken.handler.docker;
+
+import fabzo.kraken.components.DockerComponent;
+import fabzo.kraken.components.HealthCheck;
+import fabzo.kraken.wait.HTTPWait;
+import fabzo.kraken.wait.TCPWait;
+import fabzo.kraken.wait.Wait;
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.regex.Pattern;
+
+/**
+ * Generates docker health checks from the waits of a component. The checks connect to the
+ * container ports from inside of the container:
+ * <ul>
+ * <li>{@link TCPWait}: the port accepts connections (nc)</li>
+ * <li>{@link HTTPWait}: the URL responds successfully (wget), if it points at a port of the
+ * component itself. Predicates on status code and body are only checked by the wait.</li>
+ * </ul>
+ * Waits that can not be checked from inside of the container are left out and logged.
+ */
+@Slf4j
+class HealthChecks {
+
+    private HealthChecks() {
+    }
+
+    static HealthCheck fromWaits(final DockerComponent dockerC) {
+        val commands = dockerC.waitFuncs().flatMap(wait -> command(dockerC, wait));
+
+        if (commands.isEmpty()) {
+            throw new IllegalStateException("Unable to generate a health check for " + dockerC.name()
+                    + " as none of its waits can be checked from inside of the container");
+        }
+
+        return HealthCheck.command(commands.mkString(" && "));
+    }
+
+    private static Option<String> command(final DockerComponent dockerC, final Wait wait) {
+        final Option<String> command;
+        if (wait instanceof TCPWait) {
+            command = dockerC.ports().get(((TCPWait) wait).portName())
+                    .map(port -> "nc -z 127.0.0.1 " + port);
+        } else if (wait instanceof HTTPWait) {
+            command = httpCommand(dockerC, ((HTTPWait) wait).url());
+        } else {
+            command = Option.none();
+        }
+
+        if (command.isEmpty()) {
+            log.warn("{} of {} can not be checked from inside of the container and is not part of its health check",
+                    wait, dockerC.name());
+        }
+        return command;
+    }
+
+    /**
+     * Rewrites a URL like http://${name.ip}:${name.ports.http.from}/health to the container port
+     * on the loopback interface.
+     */
+    private static Option<String> httpCommand(final DockerComponent dockerC, final String url) {
+        val matcher = Pattern.compile("^(https?)://[^/]*\\$\\{" + Pattern.quote(dockerC.name())
+                + "\\.ports\\.([^}]+)\\.(?:from|to)}(/.*)?$").matcher(url);
+        if (!matcher.matches()) {
+            return Option.none();
+        }
+
+        val scheme = matcher.group(1);
+        val path = Option.of(matcher.group(3)).getOrElse("/");
+        if (path.contains("${") || path.contains("'")) {
+            return Option.none();
+        }
+
+        return dockerC.ports().get(matcher.group(2)).map(port -> String.format("wget -q -O /dev/null %s'%s://127.0.0.1:%d%s'",
+                "https".equals(scheme) ? "--no-check-certificate " : "", scheme, port, path));
+    }
+}
@@ -0,0 +1,132 @@
+package fabzo.kraken.handler.docker;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.github.dockerjava.api.command.CreateContainerCmd;
+import com.github.dockerjava.api.model.HostConfig;
+import com.github.dockerjava.core.command.CreateContainerCmdImpl;
+import fabzo.kraken.components.HealthCheck;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Create container command with the container settings docker-java does not support yet.
+ * Requires API version 1.24 or newer.
+ */
+public class KrakenCreateContainerCmd extends CreateContainerCmdImpl {
+    private static final int CPU_PERIOD = 100_000;
+
+    @JsonProperty("Healthcheck")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private HealthCheckConfig healthCheck;
+
+    @JsonProperty("NetworkingConfig")
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private NetworkingConfig networkingConfig;
+
+    @JsonIgnore
+    private final KrakenHostConfig krakenHostConfig = new KrakenHostConfig();
+
+    public KrakenCreateContainerCmd(final CreateContainerCmd.Exec exec, final String image) {
+        super(exec, image);
+        withHostConfig(krakenHostConfig);
+    }
+
+    public KrakenCreateContainerCmd withHealthCheck(final HealthCheck healthCheck) {
+        this.healthCheck = new HealthCheckConfig(healthCheck);
+        return this;
+    }
+
+    /**
+     * Mounts a tmpfs at the path inside of the container.
+     *
+     * @param options Mount options like size=65536k, may be empty
+     */
+    public KrakenCreateContainerCmd withTmpfs(final String path, final String options) {
+        krakenHostConfig.tmpfs.put(path, options);
+        return this;
+    }
+
+    /**
+     * Limits the container to the number of CPUs using the CFS quota, as CPU counts can only
+     * be set directly from API version 1.25 on.
+     */
+    public KrakenCreateContainerCmd withCpus(final double cpus) {
+        krakenHostConfig.withCpuPeriod(CPU_PERIOD);
+        krakenHostConfig.withCpuQuota((int) Math.round(cpus * CPU_PERIOD));
+        return this;
+    }
+
+    public KrakenCreateContainerCmd withMemoryLimit(final long memoryInBytes) {
+        krakenHostConfig.withMemory(memoryInBytes);
+        return this;
+    }
+
+    /**
+     * Attaches the container to the network, reachable by the given alias from the other
+     * containers of the network.
+     */
+    public KrakenCreateContainerCmd withNetwork(final String network, final String alias) {
+        withNetworkMode(network);
+        this.networkingConfig = new NetworkingConfig(network, alias);
+        return this;
+    }
+
+    /**
+     * Host config with the settings docker-java does not support yet.
+     */
+    static class KrakenHostConfig extends HostConfig {
+        private static final long serialVersionUID = 1L;
+
+        @JsonProperty("Tmpfs")
+        @JsonInclude(JsonInclude.Include.NON_EMPTY)
+        private final Map<String, String> tmpfs = new LinkedHashMap<>();
+    }
+
+    /**
+     * Health check as expected by the docker API, durations are given in nanoseconds.
+     */
+    static class HealthCheckConfig {
+        @JsonProperty("Test")
+        private final List<String> test;
+
+        @JsonProperty("Interval")
+        private final long interval;
+
+        @JsonProperty("Timeout")
+        private final long timeout;
+
+        @JsonProperty("Retries")
+        private final int retries;
+
+        HealthCheckConfig(final HealthCheck healthCheck) {
+            this.test = Collections.unmodifiableList(Arrays.asList("CMD-SHELL", healthCheck.command()));
+            this.interval = healthCheck.interval().toNanos();
+            this.timeout = healthCheck.timeout().toNanos();
+            this.retries = healthCheck.retries();
+        }
+    }
+
+    static class NetworkingConfig {
+        @JsonProperty("EndpointsConfig")
+        private final Map<String, EndpointConfig> endpointsConfig;
+
+        NetworkingConfig(final String network, final String alias) {
+            this.endpointsConfig = Collections.singletonMap(network, new EndpointConfig(alias));
+        }
+    }
+
+    static class EndpointConfig {
+        @JsonProperty("Aliases")
+        private final List<String> aliases;
+
+        EndpointConfig(final String alias) {
+            this.aliases = Collections.singletonList(alias);
+        }
+    }
+}
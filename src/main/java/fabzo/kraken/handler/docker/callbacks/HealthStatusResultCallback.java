@@ -0,0 +1,54 @@
+package fabzo.kraken.handler.docker.callbacks;
+
+import com.github.dockerjava.api.model.Event;
+import com.github.dockerjava.core.async.ResultCallbackTemplate;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.val;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Completes once docker reports the container as healthy and fails as soon as the
+ * container dies. The event stream is closed afterwards.
+ */
+public class HealthStatusResultCallback extends ResultCallbackTemplate<HealthStatusResultCallback, Event> {
+    private static final String HEALTHY = "health_status: healthy";
+    private static final String DIE = "die";
+
+    private final String containerId;
+    private final CompletableFuture<Void> healthy = new CompletableFuture<>();
+
+    public HealthStatusResultCallback(final String containerId) {
+        this.containerId = containerId;
+        healthy.whenComplete((ignored, e) -> Try.run(this::close));
+    }
+
+    public CompletableFuture<Void> healthy() {
+        return healthy;
+    }
+
+    @Override
+    public void onNext(final Event event) {
+        // Newer API versions report the event in the action, older ones in the status
+        val action = Option.of(event.getAction()).getOrElse(event::getStatus);
+
+        if (HEALTHY.equals(action)) {
+            healthy.complete(null);
+        } else if (DIE.equals(action)) {
+            healthy.completeExceptionally(new IllegalStateException("Container " + containerId + " died before becoming healthy"));
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        healthy.completeExceptionally(throwable);
+        super.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        healthy.completeExceptionally(new IllegalStateException("Event stream of container " + containerId + " closed"));
+        super.onComplete();
+    }
+}
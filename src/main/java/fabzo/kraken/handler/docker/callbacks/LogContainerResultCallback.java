@@ -1,19 +1,27 @@
 package fabzo.kraken.handler.docker.callbacks;
 
 import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.api.model.StreamType;
 import com.github.dockerjava.core.async.ResultCallbackTemplate;
-import lombok.extern.slf4j.Slf4j;
+import fabzo.kraken.logs.LogLine;
+import fabzo.kraken.logs.LogRingBuffer;
 
-@Slf4j
+/**
+ * Hands the frames of a followed container log to the log pipeline. No decoding or
+ * logging happens on the docker callback thread.
+ */
 public class LogContainerResultCallback extends ResultCallbackTemplate<LogContainerResultCallback, Frame> {
-    private final String logPrefix;
+    private final String component;
+    private final LogRingBuffer buffer;
 
-    public LogContainerResultCallback(final String logPrefix) {
-        this.logPrefix = logPrefix;
+    public LogContainerResultCallback(final String component, final LogRingBuffer buffer) {
+        this.component = component;
+        this.buffer = buffer;
     }
 
     @Override
     public void onNext(final Frame item) {
-        log.info("[{}] {}", logPrefix, item.toString());
+        final LogLine.Stream stream = item.getStreamType() == StreamType.STDERR ? LogLine.Stream.STDERR : LogLine.Stream.STDOUT;
+        buffer.offer(new LogLine(component, stream, System.currentTimeMillis(), item.getPayload()));
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,41 @@
+package fabzo.kraken.handler.docker.callbacks;
+
+import com.github.dockerjava.api.model.Frame;
+import com.github.dockerjava.core.async.ResultCallbackTemplate;
+import io.vavr.control.Try;
+
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes the raw payload of all frames of a container log to an output stream. The
+ * output is closed once the log ends, e.g. because the container exited.
+ */
+public class StreamLogResultCallback extends ResultCallbackTemplate<StreamLogResultCallback, Frame> {
+    private final OutputStream output;
+
+    public StreamLogResultCallback(final OutputStream output) {
+        this.output = output;
+    }
+
+    @Override
+    public void onNext(final Frame item) {
+        try {
+            output.write(item.getPayload());
+        } catch (final IOException e) {
+            Try.run(this::close);
+        }
+    }
+
+    @Override
+    public void onError(final Throwable throwable) {
+        Try.run(output::close);
+        super.onError(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        Try.run(output::close);
+        super.onComplete();
+    }
+}
@@ -2,6 +2,9 @@ package fabzo.kraken.handler.kubernetes;
 
 import fabzo.kraken.handler.HandlerConfiguration;
 import io.fabric8.kubernetes.client.ConfigBuilder;
+import io.vavr.control.Option;
+
+import java.time.Duration;
 
 public class KubernetesConfiguration implements HandlerConfiguration {
     private boolean runDockerComponents = false;
@@ -10,6 +13,8 @@ public class KubernetesConfiguration implements HandlerConfiguration {
     private ServiceType defaultServiceType = ServiceType.DEFAULT;
     private boolean masterIPOnNodePort = false;
     private String registryPrefix;
+    private boolean orphanReaping = false;
+    private Option<Duration> orphanMaxAge = Option.none();
 
     public static KubernetesConfiguration create() {
         return new KubernetesConfiguration();
@@ -101,4 +106,36 @@ public class KubernetesConfiguration implements HandlerConfiguration {
         this.masterIPOnNodePort = masterIPOnNodePort;
         return this;
     }
+
+    public boolean orphanReaping() {
+        return orphanReaping;
+    }
+
+    /**
+     * If enabled replication controllers and services left behind by runs that did not shut
+     * down cleanly are deleted before the first component is started. A resource is left behind
+     * if the process that created it ran on this host and is no longer alive, or if it is older
+     * than the orphan max age.
+     * <br>
+     * Default: false
+     */
+    public KubernetesConfiguration withOrphanReaping(final boolean orphanReaping) {
+        this.orphanReaping = orphanReaping;
+        return this;
+    }
+
+    public Option<Duration> orphanMaxAge() {
+        return orphanMaxAge;
+    }
+
+    /**
+     * Age after which resources are considered left behind, regardless of whether the process
+     * that created them is still alive.
+     * <br>
+     * Default: none (only resources of dead processes on this host are deleted)
+     */
+    public KubernetesConfiguration withOrphanMaxAge(final Duration orphanMaxAge) {
+        this.orphanMaxAge = Option.of(orphanMaxAge);
+        return this;
+    }
 }
@@ -5,36 +5,64 @@ import fabzo.kraken.components.ComponentState;
 import fabzo.kraken.components.DockerComponent;
 import fabzo.kraken.components.InfrastructureComponent;
 import fabzo.kraken.components.KubernetesComponent;
+import fabzo.kraken.components.Mount;
 import fabzo.kraken.handler.AbstractLifecycleHandler;
+import fabzo.kraken.handler.CommandRunner;
+import fabzo.kraken.handler.LifecycleStages;
+import fabzo.kraken.utils.ResourceOwner;
 import io.fabric8.kubernetes.api.model.ContainerPort;
 import io.fabric8.kubernetes.api.model.ContainerPortBuilder;
+import io.fabric8.kubernetes.api.model.EmptyDirVolumeSource;
 import io.fabric8.kubernetes.api.model.EnvVar;
 import io.fabric8.kubernetes.api.model.EnvVarBuilder;
+import io.fabric8.kubernetes.api.model.Quantity;
 import io.fabric8.kubernetes.api.model.ReplicationController;
 import io.fabric8.kubernetes.api.model.ReplicationControllerBuilder;
+import io.fabric8.kubernetes.api.model.ResourceRequirements;
+import io.fabric8.kubernetes.api.model.ResourceRequirementsBuilder;
 import io.fabric8.kubernetes.api.model.Service;
 import io.fabric8.kubernetes.api.model.ServiceBuilder;
 import io.fabric8.kubernetes.api.model.ServicePort;
 import io.fabric8.kubernetes.api.model.ServicePortBuilder;
+import io.fabric8.kubernetes.api.model.Volume;
+import io.fabric8.kubernetes.api.model.VolumeBuilder;
+import io.fabric8.kubernetes.api.model.VolumeMount;
+import io.fabric8.kubernetes.api.model.VolumeMountBuilder;
 import io.fabric8.kubernetes.client.DefaultKubernetesClient;
 import io.fabric8.kubernetes.client.KubernetesClient;
+import io.fabric8.kubernetes.client.dsl.ExecListener;
 import io.vavr.collection.HashMap;
 import io.vavr.collection.List;
 import io.vavr.collection.Map;
 import io.vavr.control.Option;
+import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
+import okhttp3.Response;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 @Slf4j
 public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
+    private static final String EXIT_CODE_MARKER = "kraken-exit-code=";
+    private static final Pattern EXIT_CODE = Pattern.compile(EXIT_CODE_MARKER + "(\\d+)");
+
     private KubernetesClient kubernetes;
 
     private Map<String, ReplicationController> managedReplicationControllers = HashMap.empty();
     private Map<String, Service> managedServices = HashMap.empty();
+    private boolean orphansReaped = false;
 
     private final KubernetesConfiguration config;
 
@@ -61,22 +89,59 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
 
     private void stopDockerComponent(final DockerComponent component, final EnvironmentContext ctx) {
         component.setState(ComponentState.STOPPED);
+        deleteReplicationController(component);
+        deleteService(component);
+        destroyed(component);
+    }
+
+    /**
+     * Deletes the replication controller and the service of a docker component concurrently.
+     */
+    @Override
+    public CompletableFuture<Void> stopAsync(final InfrastructureComponent component, final EnvironmentContext ctx, final Executor executor) {
+        if (!(component instanceof DockerComponent)) {
+            return super.stopAsync(component, ctx, executor);
+        }
+
+        val dockerC = (DockerComponent) component;
+        dockerC.setState(ComponentState.STOPPED);
+        val replicationController = CompletableFuture.runAsync(() -> deleteReplicationController(dockerC), executor);
+        val service = CompletableFuture.runAsync(() -> deleteService(dockerC), executor);
+
+        return CompletableFuture.allOf(replicationController, service)
+                .thenRun(() -> destroyed(dockerC));
+    }
+
+    private void deleteReplicationController(final DockerComponent component) {
         log.info("[deleting] {} (pod)", component.name());
         managedReplicationControllers.get(component.name()).forEach(replicationController -> {
             kubernetes.replicationControllers()
                     .inNamespace(config.namespace())
                     .delete(replicationController);
         });
+    }
 
+    private void deleteService(final DockerComponent component) {
         log.info("[deleting] {} (service)", component.name());
         managedServices.get(component.name()).forEach(service -> {
             kubernetes.services()
                     .inNamespace(config.namespace())
                     .delete(service);
         });
+    }
+
+    private void destroyed(final DockerComponent component) {
         component.setState(ComponentState.DESTROYED);
+        release(component.name());
+    }
 
-        managedServices = managedServices.remove(component.name());
+    private synchronized void manage(final String name, final ReplicationController replicationController, final Service service) {
+        managedReplicationControllers = managedReplicationControllers.put(name, replicationController);
+        managedServices = managedServices.put(name, service);
+    }
+
+    private synchronized void release(final String name) {
+        managedServices = managedServices.remove(name);
     }
 
     @Override
@@ -88,13 +153,7 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
             return true;
         }
 
-        if (kubernetes == null) {
-            if (config.kubernetesConfig() == null) {
-                kubernetes = new DefaultKubernetesClient();
-            } else {
-                kubernetes = new DefaultKubernetesClient(config.kubernetesConfig().build());
-            }
-        }
+        ensureKubernetesClient();
 
         if (component instanceof DockerComponent) {
             return runDockerComponent((DockerComponent)component, ctx);
@@ -105,19 +164,108 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
         return false;
     }
 
+    @Override
+    public void prepare(final List<InfrastructureComponent> components, final EnvironmentContext ctx) {
+        if (components.isEmpty() || !config.orphanReaping()) {
+            return;
+        }
+        ensureKubernetesClient();
+        reapOrphans();
+    }
+
+    /**
+     * Deletes the replication controllers and services of runs that did not shut down cleanly,
+     * once per handler.
+     */
+    private synchronized void reapOrphans() {
+        if (orphansReaped) {
+            return;
+        }
+        orphansReaped = true;
+
+        val owner = ResourceOwner.current();
+        val replicationControllers = List.ofAll(kubernetes.replicationControllers()
+                .inNamespace(config.namespace())
+                .withLabel("scope", "integration-tests")
+                .list()
+                .getItems())
+                .filter(rc -> owner.isOrphaned(rc.getMetadata().getLabels(), config.orphanMaxAge()));
+        val services = List.ofAll(kubernetes.services()
+                .inNamespace(config.namespace())
+                .withLabel("scope", "integration-tests")
+                .list()
+                .getItems())
+                .filter(service -> owner.isOrphaned(service.getMetadata().getLabels(), config.orphanMaxAge()));
+
+        if (replicationControllers.isEmpty() && services.isEmpty()) {
+            return;
+        }
+
+        log.info("Deleting {} replication controller(s) and {} service(s) left behind by previous runs",
+                replicationControllers.size(), services.size());
+        replicationControllers.forEach(rc -> Try.run(() -> kubernetes.replicationControllers()
+                .inNamespace(config.namespace())
+                .delete(rc))
+                .onFailure(e -> log.warn("Failed to delete {}: {}", rc.getMetadata().getName(), e.getMessage())));
+        services.forEach(service -> Try.run(() -> kubernetes.services()
+                .inNamespace(config.namespace())
+                .delete(service))
+                .onFailure(e -> log.warn("Failed to delete {}: {}", service.getMetadata().getName(), e.getMessage())));
+    }
+
+    private synchronized void ensureKubernetesClient() {
+        if (kubernetes == null) {
+            if (config.kubernetesConfig() == null) {
+                kubernetes = new DefaultKubernetesClient();
+            } else {
+                kubernetes = new DefaultKubernetesClient(config.kubernetesConfig().build());
+            }
+        }
+    }
+
     private boolean runKubernetesComponent(final KubernetesComponent component, final EnvironmentContext ctx) {
         return false;
     }
 
     private boolean runDockerComponent(final DockerComponent component, final EnvironmentContext ctx) {
+        createDockerComponent(component, ctx);
+        startDockerComponent(component, ctx);
+
+        return false;
+    }
+
+    /**
+     * Creates the replication controller and service of a docker component as one stage
+     * and registers the resulting IP and ports as another.
+     */
+    @Override
+    public LifecycleStages runAsync(final InfrastructureComponent component, final EnvironmentContext ctx, final Executor executor) {
+        throwIfNotSupported(component);
 
+        if (!(component instanceof DockerComponent)
+                || (component.state() != ComponentState.WAITING && component.state() != ComponentState.DESTROYED)) {
+            return super.runAsync(component, ctx, executor);
+        }
+
+        val dockerC = (DockerComponent) component;
+        val created = CompletableFuture.runAsync(() -> {
+            ensureKubernetesClient();
+            createDockerComponent(dockerC, ctx);
+        }, executor);
+        val started = created.thenApplyAsync(ignored -> {
+            startDockerComponent(dockerC, ctx);
+            return false;
+        }, executor);
+
+        return stages(component, ctx, created, started, executor);
+    }
+
+    private void createDockerComponent(final DockerComponent component, final EnvironmentContext ctx) {
         // Use a default configuration for docker components consisting of a replication controller and service
         component.setState(ComponentState.CREATING);
         val replicationController = buildDockerReplicationController(component, ctx);
-        managedReplicationControllers = managedReplicationControllers.put(component.name(), replicationController);
-
         val service = buildDockerService(component, ctx);
-        managedServices = managedServices.put(component.name(), service);
+        manage(component.name(), replicationController, service);
 
 
         component.setState(ComponentState.STARTING);
@@ -131,16 +279,18 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
                 .inNamespace(config.namespace())
                 .create(service);
 
+        ctx.registerShutdownHook(() -> stop(component, ctx));
+    }
+
+    private void startDockerComponent(final DockerComponent component, final EnvironmentContext ctx) {
         // TODO: Check if really started?
 
         component.setState(ComponentState.STARTED);
-
-        ctx.registerShutdownHook(() -> stop(component, ctx));
+        ctx.setLogSource(component.name(), output -> watchLog(component, ctx, output));
+        ctx.setCommandRunner(component.name(), command -> prepareExec(component, ctx, command));
 
         // TODO: Which IP should be registered? Is the ClusterIP the correct one?
         registerWithContext(component, ctx);
-
-        return false;
     }
 
     private ReplicationController buildDockerReplicationController(final DockerComponent component, final EnvironmentContext ctx) {
@@ -155,6 +305,7 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
                 .addToLabels("salt", ctx.salt())
                 .addToLabels("app", component.name())
                 .addToLabels("scope", "integration-tests")
+                .addToLabels(ResourceOwner.current().labels(ctx.salt()).toJavaMap())
                 .endMetadata()
             .withNewSpec()
                 .withReplicas(1)
@@ -171,7 +322,10 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
                             .withImage(image)
                             .addAllToPorts(createContainerPorts(component, ctx))
                             .withEnv(createEnvVars(component, ctx))
+                            .withVolumeMounts(createVolumeMounts(component))
+                            .withResources(createResources(component))
                         .endContainer()
+                        .withVolumes(createVolumes(component))
                     .endSpec()
                 .endTemplate()
             .endSpec()
@@ -187,6 +341,7 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
                 .addToLabels("salt", ctx.salt())
                 .addToLabels("app", component.name())
                 .addToLabels("scope", "integration-tests")
+                .addToLabels(ResourceOwner.current().labels(ctx.salt()).toJavaMap())
                 .endMetadata()
             .withNewSpec()
                 .addAllToPorts(createServicePorts(component, ctx))
@@ -282,6 +437,60 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
         }).toJavaList();
     }
 
+    /**
+     * Requests and limits the declared resources, so that the cluster only schedules the pod
+     * on a node that has them available.
+     */
+    private ResourceRequirements createResources(final DockerComponent dockerC) {
+        Map<String, Quantity> resources = HashMap.empty();
+        if (dockerC.cpus().isDefined()) {
+            resources = resources.put("cpu", new Quantity(Math.round(dockerC.cpus().get() * 1000) + "m"));
+        }
+        if (dockerC.memory().isDefined()) {
+            resources = resources.put("memory", new Quantity(String.valueOf(dockerC.memory().get())));
+        }
+
+        return new ResourceRequirementsBuilder()
+                .withLimits(resources.toJavaMap())
+                .withRequests(resources.toJavaMap())
+                .build();
+    }
+
+    /**
+     * Maps tmpfs mounts to memory backed emptyDir volumes and named volumes to plain emptyDir
+     * volumes. Bind mounts cannot be mapped as the host paths do not exist on the nodes.
+     */
+    private java.util.List<Volume> createVolumes(final DockerComponent dockerC) {
+        return dockerC.mounts().zipWithIndex().map(mountIndex -> {
+            val mount = mountIndex._1;
+            if (mount.type() == Mount.Type.BIND) {
+                throw new IllegalArgumentException(String.format(
+                        "Bind mount %s of %s is not supported on kubernetes", mount.target(), dockerC.name()));
+            }
+
+            val emptyDir = new EmptyDirVolumeSource(mount.type() == Mount.Type.TMPFS ? "Memory" : null);
+            mount.size().forEach(size -> emptyDir.setAdditionalProperty("sizeLimit", String.valueOf(size)));
+
+            return new VolumeBuilder()
+                    .withName(volumeName(mountIndex._2))
+                    .withEmptyDir(emptyDir)
+                    .build();
+        }).toJavaList();
+    }
+
+    private java.util.List<VolumeMount> createVolumeMounts(final DockerComponent dockerC) {
+        return dockerC.mounts().zipWithIndex()
+                .map(mountIndex -> new VolumeMountBuilder()
+                        .withName(volumeName(mountIndex._2))
+                        .withMountPath(mountIndex._1.target())
+                        .build())
+                .toJavaList();
+    }
+
+    private String volumeName(final int index) {
+        return "mount-" + index;
+    }
+
     private String saltedName(final String salt, final String name) {
         return salt + "-" + name;
     }
@@ -324,6 +533,87 @@ public class KubernetesLifecycleHandler extends AbstractLifecycleHandler {
         });
     }
 
+    /**
+     * Streams the complete log of the pod of the component to the given output.
+     */
+    private Closeable watchLog(final DockerComponent component, final EnvironmentContext ctx, final OutputStream output) {
+        return kubernetes.pods()
+                .inNamespace(config.namespace())
+                .withName(podName(component, ctx))
+                .watchLog(output);
+    }
+
+    /**
+     * Prepares the exec of the command inside the pod of the component. The exec API of the
+     * client does not report exit codes, the command is therefore wrapped by a shell that
+     * prints the exit code after the output of the command.
+     */
+    private CommandRunner.Execution prepareExec(final DockerComponent component, final EnvironmentContext ctx, final List<String> command) {
+        val podName = podName(component, ctx);
+        val wrapped = List.of("sh", "-c", "\"$@\"; echo " + EXIT_CODE_MARKER + "$?", "sh").appendAll(command);
+
+        return timeout -> {
+            val output = new ByteArrayOutputStream();
+            val closed = new CompletableFuture<Void>();
+
+            val execWatch = kubernetes.pods()
+                    .inNamespace(config.namespace())
+                    .withName(podName)
+                    .writingOutput(output)
+                    .writingError(output)
+                    .usingListener(new ExecListener() {
+                        @Override
+                        public void onOpen(final Response response) {
+                        }
+
+                        @Override
+                        public void onFailure(final Throwable t, final Response response) {
+                            closed.completeExceptionally(t);
+                        }
+
+                        @Override
+                        public void onClose(final int code, final String reason) {
+                            closed.complete(null);
+                        }
+                    })
+                    .exec(wrapped.toJavaArray(String.class));
+
+            try {
+                closed.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (final TimeoutException e) {
+                throw new TimeoutException("Exec of " + command.mkString(" ") + " did not exit within " + timeout);
+            } finally {
+                execWatch.close();
+            }
+
+            val text = new String(output.toByteArray(), StandardCharsets.UTF_8);
+            val matcher = EXIT_CODE.matcher(text);
+            if (!matcher.find()) {
+                log.debug("Exec of {} did not report an exit code: {}", command.mkString(" "), text.trim());
+                return -1;
+            }
+
+            val exitCode = Integer.parseInt(matcher.group(1));
+            if (exitCode != 0) {
+                log.debug("Exec of {} exited with {}: {}", command.mkString(" "), exitCode, text.trim());
+            }
+            return exitCode;
+        };
+    }
+
+    private String podName(final DockerComponent component, final EnvironmentContext ctx) {
+        val pods = kubernetes.pods()
+                .inNamespace(config.namespace())
+                .withLabel("salt", ctx.salt())
+                .withLabel("app", component.name())
+                .withLabel("scope", "integration-tests")
+                .list();
+
+        return List.ofAll(pods.getItems()).headOption()
+                .map(pod -> pod.getMetadata().getName())
+                .getOrElseThrow(() -> new IllegalStateException("No pod found for " + component.name()));
+    }
+
     @Override
     public boolean canRun(final Class<? extends InfrastructureComponent> clazz) {
         if (DockerComponent.class.isAssignableFrom(clazz)) {
@@ -0,0 +1,59 @@
+package fabzo.kraken.logs;
+
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * Appends the logs of all components to a single file. The file is flushed after
+ * every batch.
+ */
+@Slf4j
+public class FileLogSink implements LogSink {
+    private final Path file;
+    private final BufferedWriter writer;
+
+    public FileLogSink(final Path file) {
+        this.file = file;
+        try {
+            if (file.getParent() != null) {
+                Files.createDirectories(file.getParent());
+            }
+            this.writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to open log file " + file, e);
+        }
+    }
+
+    @Override
+    public void write(final List<LogLine> lines) {
+        try {
+            for (final LogLine line : lines) {
+                writer.write(Instant.ofEpochMilli(line.timestamp()).toString());
+                writer.write(" [");
+                writer.write(line.component());
+                writer.write("] ");
+                writer.write(line.toString());
+                writer.newLine();
+            }
+            writer.flush();
+        } catch (final IOException e) {
+            log.warn("Failed to write logs to {}: {}", file, e.getMessage());
+        }
+    }
+
+    @Override
+    public void close() {
+        Try.run(writer::close);
+    }
+}
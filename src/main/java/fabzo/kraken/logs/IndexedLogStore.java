@@ -0,0 +1,462 @@
+package fabzo.kraken.logs;
+
+import fabzo.kraken.utils.ResourceOwner;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stores the logs of every component in its own append-only file next to a sparse
+ * timestamp index. Lines are kept on disk only, a time window is read back by looking up
+ * the closest index entry and scanning the memory-mapped file from there.
+ * <br>
+ * Files of earlier runs are appended to. Their index is loaded when a component logs
+ * for the first time, a record cut off by a crash is discarded.
+ * <br>
+ * A store holds an exclusive lock on the files it writes to until it is closed. When another
+ * store, in this or another JVM, is writing the logs of the same component to the same
+ * directory, the lines are written to files named after this store instead
+ * ({@code <component>-<pid>-<n>.log}). Reading never modifies files it does not write to.
+ * <br>
+ * Record layout: timestamp (long), stream (byte), payload length (int), payload
+ * <br>
+ * Index layout: timestamp (long), offset of the record in the log file (long)
+ */
+@Slf4j
+public class IndexedLogStore implements LogSink {
+    private static final int RECORD_HEADER_SIZE = Long.BYTES + 1 + Integer.BYTES;
+    private static final int INDEX_ENTRY_SIZE = Long.BYTES * 2;
+    private static final long DEFAULT_INDEX_INTERVAL = 64 * 1024;
+    private static final int DEFAULT_CHUNK_SIZE = 64 * 1024 * 1024;
+
+    // File locks are held by the JVM, stores of the same JVM are kept apart here
+    private static final Set<Path> LOCKED = ConcurrentHashMap.newKeySet();
+    private static final AtomicInteger STORES = new AtomicInteger();
+
+    private final Path directory;
+    private final long indexInterval;
+    private final int chunkSize;
+    private final String storeName = ResourceOwner.current().pid() + "-" + STORES.incrementAndGet();
+    private final Map<String, ComponentLog> logs = new HashMap<>();
+    private final Map<String, String> fileNames = new HashMap<>();
+    private boolean closed = false;
+
+    public IndexedLogStore(final Path directory) {
+        this(directory, DEFAULT_INDEX_INTERVAL);
+    }
+
+    /**
+     * @param directory     Directory the log and index files are written to
+     * @param indexInterval Number of bytes written to a log file between two index entries
+     */
+    public IndexedLogStore(final Path directory, final long indexInterval) {
+        this(directory, indexInterval, DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize Number of bytes of a log file mapped at once when reading
+     */
+    IndexedLogStore(final Path directory, final long indexInterval, final int chunkSize) {
+        this.directory = directory;
+        this.indexInterval = indexInterval;
+        this.chunkSize = chunkSize;
+        try {
+            Files.createDirectories(directory);
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to create log directory " + directory, e);
+        }
+    }
+
+    public Path directory() {
+        return directory;
+    }
+
+    @Override
+    public synchronized void write(final java.util.List<LogLine> lines) {
+        for (final LogLine line : lines) {
+            try {
+                componentLog(line.component()).append(line);
+            } catch (final IOException e) {
+                log.warn("Failed to store log line of {}: {}", line.component(), e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Returns all lines of the component received between from and to (both inclusive).
+     */
+    public List<LogLine> read(final String component, final Instant from, final Instant to) {
+        try {
+            final ComponentLog componentLog;
+            synchronized (this) {
+                componentLog = logs.get(component);
+                if (componentLog == null) {
+                    // Logs of earlier runs and logs that stay readable after the store has been closed
+                    val fileName = fileNames.getOrDefault(component, component);
+                    if (!Files.exists(logFile(fileName))) {
+                        return List.empty();
+                    }
+                    val readOnlyLog = new ComponentLog(component, fileName, false);
+                    try {
+                        return readOnlyLog.read(from.toEpochMilli(), to.toEpochMilli());
+                    } finally {
+                        readOnlyLog.close();
+                    }
+                }
+            }
+            return componentLog.read(from.toEpochMilli(), to.toEpochMilli());
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to read logs of " + component, e);
+        }
+    }
+
+    private Path logFile(final String fileName) {
+        return directory.resolve(fileName + ".log");
+    }
+
+    private Path indexFile(final String fileName) {
+        return directory.resolve(fileName + ".idx");
+    }
+
+    private ComponentLog componentLog(final String component) throws IOException {
+        ComponentLog componentLog = logs.get(component);
+        if (componentLog == null) {
+            if (closed) {
+                throw new IOException("The log store has been closed");
+            }
+            componentLog = Try.of(() -> new ComponentLog(component, component, true))
+                    .recoverWith(LockedException.class, e -> {
+                        log.info("Logs of {} are written to {} by another store, using {} instead",
+                                component, directory, logFile(component + "-" + storeName).getFileName());
+                        return Try.of(() -> new ComponentLog(component, component + "-" + storeName, true));
+                    })
+                    .getOrElseThrow(e -> e instanceof IOException ? (IOException) e : new IOException(e));
+            logs.put(component, componentLog);
+            fileNames.put(component, componentLog.fileName);
+        }
+        return componentLog;
+    }
+
+    private static void readFully(final FileChannel channel, final ByteBuffer buffer, final long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of file");
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        logs.values().forEach(ComponentLog::close);
+        logs.clear();
+    }
+
+    private class ComponentLog {
+        private final String component;
+        private final String fileName;
+        private final boolean writable;
+        private final FileChannel data;
+        private final Option<FileChannel> index;
+        // Channels opened for appending can not be read from, writable logs open the files twice
+        private final Option<FileChannel> dataAppender;
+        private final Option<FileChannel> indexAppender;
+        private final Option<FileLock> lock;
+
+        // Sparse index, also kept in memory as it is only a few entries per megabyte of logs
+        private long[] indexTimestamps = new long[16];
+        private long[] indexOffsets = new long[16];
+        private int indexSize = 0;
+
+        private volatile long size = 0;
+        private long lastIndexedOffset = -1;
+
+        /**
+         * @param writable Appends to the files, holding an exclusive lock on them. A read-only
+         *                 log ignores an incomplete record at the end instead of discarding it.
+         * @throws LockedException if the files are written to by another store
+         */
+        ComponentLog(final String component, final String fileName, final boolean writable) throws IOException {
+            this.component = component;
+            this.fileName = fileName;
+            this.writable = writable;
+
+            if (!writable) {
+                this.lock = Option.none();
+                this.dataAppender = Option.none();
+                this.indexAppender = Option.none();
+                this.data = FileChannel.open(logFile(fileName), StandardOpenOption.READ);
+                this.index = Files.exists(indexFile(fileName))
+                        ? Option.of(FileChannel.open(indexFile(fileName), StandardOpenOption.READ))
+                        : Option.none();
+            } else {
+                val path = logFile(fileName).toAbsolutePath().normalize();
+                if (!LOCKED.add(path)) {
+                    throw new LockedException();
+                }
+                final java.util.List<FileChannel> opened = new ArrayList<>();
+                try {
+                    val dataAppender = open(opened, path, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+                    this.lock = Option.of(tryLock(dataAppender));
+                    this.dataAppender = Option.of(dataAppender);
+                    this.data = open(opened, path, StandardOpenOption.READ);
+                    this.indexAppender = Option.of(open(opened, indexFile(fileName), StandardOpenOption.CREATE, StandardOpenOption.APPEND));
+                    this.index = Option.of(open(opened, indexFile(fileName), StandardOpenOption.READ));
+                } catch (final IOException | RuntimeException e) {
+                    opened.forEach(channel -> Try.run(channel::close));
+                    LOCKED.remove(path);
+                    throw e;
+                }
+            }
+
+            loadIndex();
+            recover();
+        }
+
+        private FileChannel open(final java.util.List<FileChannel> opened, final Path path,
+                                 final StandardOpenOption... options) throws IOException {
+            val channel = FileChannel.open(path, options);
+            opened.add(channel);
+            return channel;
+        }
+
+        private FileLock tryLock(final FileChannel channel) throws IOException {
+            final FileLock fileLock;
+            try {
+                fileLock = channel.tryLock();
+            } catch (final OverlappingFileLockException e) {
+                throw new LockedException();
+            }
+            if (fileLock == null) {
+                throw new LockedException();
+            }
+            return fileLock;
+        }
+
+        /**
+         * Loads the index entries of earlier runs. Entries pointing past the end of the log
+         * file and a partially written entry are dropped.
+         */
+        private void loadIndex() throws IOException {
+            if (index.isEmpty()) {
+                return;
+            }
+            val index = this.index.get();
+            val dataSize = data.size();
+            val entries = index.size() / INDEX_ENTRY_SIZE;
+            val entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+
+            long valid = 0;
+            for (long i = 0; i < entries; i++) {
+                entry.clear();
+                readFully(index, entry, i * INDEX_ENTRY_SIZE);
+                entry.flip();
+
+                val timestamp = entry.getLong();
+                val offset = entry.getLong();
+                if (offset >= dataSize || offset <= lastIndexedOffset) {
+                    break;
+                }
+
+                putIndexEntry(timestamp, offset);
+                valid++;
+            }
+
+            if (writable) {
+                indexAppender.get().truncate(valid * INDEX_ENTRY_SIZE);
+            }
+        }
+
+        /**
+         * Finds the end of the last complete record, starting at the last index entry. A
+         * writable log discards everything after it.
+         */
+        private void recover() throws IOException {
+            val dataSize = data.size();
+            val header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+            long offset = Math.max(lastIndexedOffset, 0);
+
+            while (offset + RECORD_HEADER_SIZE <= dataSize) {
+                header.clear();
+                readFully(data, header, offset);
+                val next = offset + RECORD_HEADER_SIZE + header.getInt(Long.BYTES + 1);
+                if (next > dataSize) {
+                    break;
+                }
+                offset = next;
+            }
+
+            if (offset < dataSize && writable) {
+                log.warn("Discarding {} byte(s) of an incomplete log record of {}", dataSize - offset, component);
+                dataAppender.get().truncate(offset);
+            }
+            size = offset;
+        }
+
+        void append(final LogLine line) throws IOException {
+            val offset = size;
+            if (lastIndexedOffset < 0 || offset - lastIndexedOffset >= indexInterval) {
+                addIndexEntry(line.timestamp(), offset);
+            }
+
+            val record = ByteBuffer.allocate(RECORD_HEADER_SIZE + line.payload().length);
+            record.putLong(line.timestamp());
+            record.put((byte) line.stream().ordinal());
+            record.putInt(line.payload().length);
+            record.put(line.payload());
+            record.flip();
+
+            while (record.hasRemaining()) {
+                dataAppender.get().write(record);
+            }
+
+            size = offset + record.limit();
+        }
+
+        private void addIndexEntry(final long timestamp, final long offset) throws IOException {
+            putIndexEntry(timestamp, offset);
+
+            val entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putLong(timestamp).putLong(offset).flip();
+            while (entry.hasRemaining()) {
+                indexAppender.get().write(entry);
+            }
+        }
+
+        private synchronized void putIndexEntry(final long timestamp, final long offset) {
+            if (indexSize == indexTimestamps.length) {
+                indexTimestamps = Arrays.copyOf(indexTimestamps, indexSize * 2);
+                indexOffsets = Arrays.copyOf(indexOffsets, indexSize * 2);
+            }
+            indexTimestamps[indexSize] = timestamp;
+            indexOffsets[indexSize] = offset;
+            indexSize++;
+            lastIndexedOffset = offset;
+        }
+
+        /**
+         * Offset of the last index entry before the given timestamp. Lines are stored in the
+         * order they have been received, scanning from there cannot miss a line of the window.
+         */
+        private synchronized long startOffset(final long from) {
+            int low = 0;
+            int high = indexSize - 1;
+            int found = -1;
+
+            while (low <= high) {
+                val mid = (low + high) >>> 1;
+                if (indexTimestamps[mid] < from) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+
+            return found < 0 ? 0 : indexOffsets[found];
+        }
+
+        /**
+         * Scans the log file in mapped chunks, a single mapping is limited to 2 GB.
+         */
+        List<LogLine> read(final long from, final long to) throws IOException {
+            val end = size;
+            val streams = LogLine.Stream.values();
+            val lines = new ArrayList<LogLine>();
+            long position = startOffset(from);
+
+            while (position < end) {
+                val chunk = map(position, end);
+                int consumed = 0;
+
+                while (chunk.remaining() >= RECORD_HEADER_SIZE) {
+                    val timestamp = chunk.getLong();
+                    val stream = streams[chunk.get()];
+                    val length = chunk.getInt();
+
+                    if (timestamp > to) {
+                        return List.ofAll(lines);
+                    }
+                    if (chunk.remaining() < length) {
+                        // Continues in the next chunk
+                        break;
+                    }
+
+                    if (timestamp < from) {
+                        chunk.position(chunk.position() + length);
+                    } else {
+                        val payload = new byte[length];
+                        chunk.get(payload);
+                        lines.add(new LogLine(component, stream, timestamp, payload));
+                    }
+                    consumed = chunk.position();
+                }
+
+                if (consumed == 0) {
+                    break;
+                }
+                position += consumed;
+            }
+
+            return List.ofAll(lines);
+        }
+
+        /**
+         * Maps a chunk starting at the given record. A record larger than a chunk is mapped
+         * as a whole.
+         */
+        private MappedByteBuffer map(final long position, final long end) throws IOException {
+            final MappedByteBuffer chunk = data.map(FileChannel.MapMode.READ_ONLY, position, Math.min(chunkSize, end - position));
+            if (chunk.remaining() >= RECORD_HEADER_SIZE) {
+                val recordSize = RECORD_HEADER_SIZE + (long) chunk.getInt(Long.BYTES + 1);
+                if (recordSize > chunk.remaining() && position + recordSize <= end) {
+                    return data.map(FileChannel.MapMode.READ_ONLY, position, recordSize);
+                }
+            }
+            return chunk;
+        }
+
+        void close() {
+            lock.forEach(fileLock -> Try.run(fileLock::release));
+            dataAppender.forEach(channel -> Try.run(channel::close));
+            indexAppender.forEach(channel -> Try.run(channel::close));
+            Try.run(data::close);
+            index.forEach(channel -> Try.run(channel::close));
+            if (writable) {
+                LOCKED.remove(logFile(fileName).toAbsolutePath().normalize());
+            }
+        }
+    }
+
+    /**
+     * The files are written to by another store.
+     */
+    private static class LockedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        LockedException() {
+            super("Log file is locked by another store");
+        }
+    }
+}
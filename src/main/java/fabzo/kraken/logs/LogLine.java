@@ -0,0 +1,61 @@
+package fabzo.kraken.logs;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A single chunk of output of a component as received from its log stream.
+ * The payload is only decoded when a sink asks for the text.
+ */
+public class LogLine {
+    public enum Stream {
+        STDOUT,
+        STDERR
+    }
+
+    private final String component;
+    private final Stream stream;
+    private final long timestamp;
+    private final byte[] payload;
+
+    public LogLine(final String component, final Stream stream, final long timestamp, final byte[] payload) {
+        this.component = component;
+        this.stream = stream;
+        this.timestamp = timestamp;
+        this.payload = payload;
+    }
+
+    public String component() {
+        return component;
+    }
+
+    public Stream stream() {
+        return stream;
+    }
+
+    /**
+     * Time the line has been received in milliseconds since the epoch.
+     */
+    public long timestamp() {
+        return timestamp;
+    }
+
+    public byte[] payload() {
+        return payload;
+    }
+
+    /**
+     * Payload decoded as UTF-8 without the trailing line break.
+     */
+    public String text() {
+        int length = payload.length;
+        while (length > 0 && (payload[length - 1] == '\n' || payload[length - 1] == '\r')) {
+            length--;
+        }
+        return new String(payload, 0, length, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return stream + ": " + text();
+    }
+}
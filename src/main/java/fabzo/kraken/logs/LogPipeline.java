@@ -0,0 +1,180 @@
+package fabzo.kraken.logs;
+
+import io.vavr.collection.List;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Decouples component log streams from the log sinks. Every component writes into its
+ * own bounded {@link LogRingBuffer}, a single drainer thread moves the lines in batches
+ * to all sinks. Log streams therefore never wait for slow sinks, unless the overflow
+ * strategy is {@link OverflowStrategy#BLOCK}.
+ * <br>
+ * Stores receive the lines of every component, the other sinks only those of followed
+ * components.
+ */
+@Slf4j
+public class LogPipeline {
+    private static final int BATCH_SIZE = 512;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+
+    private final List<LogSink> sinks;
+    private final List<LogSink> stores;
+    private final int bufferSize;
+    private final OverflowStrategy overflowStrategy;
+    private final Map<String, LogRingBuffer> buffers = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> followed = new ConcurrentHashMap<>();
+
+    private volatile boolean running = true;
+    private boolean closed = false;
+    private Thread drainer;
+
+    public LogPipeline(final List<LogSink> sinks, final int bufferSize, final OverflowStrategy overflowStrategy) {
+        this(sinks, List.empty(), bufferSize, overflowStrategy);
+    }
+
+    /**
+     * @param sinks  Sinks receiving the lines of followed components
+     * @param stores Sinks receiving the lines of all components
+     */
+    public LogPipeline(final List<LogSink> sinks, final List<LogSink> stores, final int bufferSize, final OverflowStrategy overflowStrategy) {
+        this.sinks = sinks;
+        this.stores = stores;
+        this.bufferSize = bufferSize;
+        this.overflowStrategy = overflowStrategy;
+    }
+
+    /**
+     * Pipeline writing to SLF4J with default buffer settings.
+     */
+    public static LogPipeline defaultPipeline() {
+        return new LogPipeline(List.of(new Slf4jLogSink()), 4096, OverflowStrategy.DROP_OLDEST);
+    }
+
+    /**
+     * Returns the buffer the log stream of the given followed component writes to.
+     */
+    public LogRingBuffer channel(final String component) {
+        followed.put(component, true);
+        return buffer(component);
+    }
+
+    /**
+     * Returns the buffer the log stream of a component that is not followed writes to.
+     * Its lines only go to the stores.
+     */
+    public LogRingBuffer storeChannel(final String component) {
+        followed.putIfAbsent(component, false);
+        return buffer(component);
+    }
+
+    private LogRingBuffer buffer(final String component) {
+        ensureDrainer();
+        val buffer = buffers.computeIfAbsent(component, name -> new LogRingBuffer(bufferSize, overflowStrategy));
+        if (!running) {
+            // Nothing drains buffers of a closed pipeline
+            buffer.close();
+        }
+        return buffer;
+    }
+
+    public List<LogSink> sinks() {
+        return sinks;
+    }
+
+    /**
+     * Whether any sink keeps the lines of components that are not followed.
+     */
+    public boolean hasStores() {
+        return !stores.isEmpty();
+    }
+
+    private synchronized void ensureDrainer() {
+        if (drainer == null && running) {
+            drainer = new Thread(this::drain, "kraken-log-drainer");
+            drainer.setDaemon(true);
+            drainer.start();
+        }
+    }
+
+    private void drain() {
+        val batch = new ArrayList<LogLine>(BATCH_SIZE);
+
+        while (running) {
+            if (!drainOnce(batch)) {
+                LockSupport.parkNanos(IDLE_PARK_NANOS);
+            }
+        }
+
+        // Flush whatever is left after closing
+        while (drainOnce(batch)) {
+            // continue until all buffers are empty
+        }
+    }
+
+    private boolean drainOnce(final ArrayList<LogLine> batch) {
+        boolean drained = false;
+
+        for (final Map.Entry<String, LogRingBuffer> entry : buffers.entrySet()) {
+            val buffer = entry.getValue();
+
+            val dropped = buffer.takeDropped();
+            if (dropped > 0) {
+                log.warn("Dropped {} log line(s) of {} as the log sinks could not keep up", dropped, entry.getKey());
+            }
+
+            if (buffer.drainTo(batch, BATCH_SIZE) > 0) {
+                write(followed.getOrDefault(entry.getKey(), true) ? sinks.appendAll(stores) : stores, batch);
+                batch.clear();
+                drained = true;
+            }
+        }
+
+        return drained;
+    }
+
+    private void write(final List<LogSink> targets, final java.util.List<LogLine> batch) {
+        targets.forEach(sink -> {
+            try {
+                sink.write(batch);
+            } catch (final Exception e) {
+                log.warn("Log sink {} failed: {}", sink.getClass().getSimpleName(), e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Drains all buffered lines and closes the sinks. Lines offered afterwards are dropped,
+     * log streams blocked by {@link OverflowStrategy#BLOCK} are released. Closing more than
+     * once has no effect.
+     */
+    public void close() {
+        final Thread drainerThread;
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            running = false;
+            drainerThread = drainer;
+        }
+        buffers.values().forEach(LogRingBuffer::close);
+
+        if (drainerThread != null) {
+            LockSupport.unpark(drainerThread);
+            try {
+                drainerThread.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        sinks.appendAll(stores).forEach(LogSink::close);
+    }
+}
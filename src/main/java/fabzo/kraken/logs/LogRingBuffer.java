@@ -0,0 +1,122 @@
+package fabzo.kraken.logs;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Bounded lock-free ring buffer between a single log stream (producer) and the
+ * drainer of the {@link LogPipeline} (consumer).
+ * <br>
+ * The producer only ever advances the tail. The consumer advances the head, which
+ * the producer may also do when dropping the oldest line. Both sides use CAS on the
+ * head so that every line is either drained or dropped exactly once.
+ */
+public class LogRingBuffer {
+    private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    private final AtomicReferenceArray<LogLine> slots;
+    private final int capacity;
+    private final int mask;
+    private final OverflowStrategy overflowStrategy;
+
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    private volatile boolean closed = false;
+
+    /**
+     * @param capacity Minimum number of lines the buffer can hold, rounded up to a power of two
+     */
+    public LogRingBuffer(final int capacity, final OverflowStrategy overflowStrategy) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be at least 1");
+        }
+        int powerOfTwo = 1;
+        while (powerOfTwo < capacity) {
+            powerOfTwo <<= 1;
+        }
+        this.capacity = powerOfTwo;
+        this.mask = this.capacity - 1;
+        this.slots = new AtomicReferenceArray<>(this.capacity);
+        this.overflowStrategy = overflowStrategy;
+    }
+
+    /**
+     * Adds a line. Must only be called by one thread at a time. Once the buffer has been
+     * closed the line is dropped, also while blocking for room.
+     */
+    public void offer(final LogLine line) {
+        final long position = tail.get();
+
+        long currentHead;
+        while (position - (currentHead = head.get()) >= capacity) {
+            if (closed) {
+                dropped.incrementAndGet();
+                return;
+            }
+            if (overflowStrategy == OverflowStrategy.DROP_OLDEST) {
+                if (head.compareAndSet(currentHead, currentHead + 1)) {
+                    dropped.incrementAndGet();
+                }
+            } else {
+                LockSupport.parkNanos(BLOCK_PARK_NANOS);
+            }
+        }
+
+        if (closed) {
+            dropped.incrementAndGet();
+            return;
+        }
+        slots.set((int) (position & mask), line);
+        tail.lazySet(position + 1);
+    }
+
+    /**
+     * Moves up to max lines into the target collection.
+     *
+     * @return Number of drained lines
+     */
+    public int drainTo(final Collection<LogLine> target, final int max) {
+        int count = 0;
+        while (count < max) {
+            final long position = head.get();
+            if (position >= tail.get()) {
+                break;
+            }
+
+            final LogLine line = slots.get((int) (position & mask));
+            if (head.compareAndSet(position, position + 1)) {
+                target.add(line);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Stops accepting lines, e.g. because nothing drains the buffer anymore. Lines already
+     * buffered can still be drained.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    public boolean isEmpty() {
+        return head.get() >= tail.get();
+    }
+
+    /**
+     * Returns the number of lines dropped since the last call.
+     */
+    public long takeDropped() {
+        return dropped.getAndSet(0);
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -0,0 +1,18 @@
+package fabzo.kraken.logs;
+
+import java.util.List;
+
+/**
+ * Destination of component logs. Sinks are only ever called from the single
+ * drainer thread of the {@link LogPipeline}.
+ */
+public interface LogSink {
+
+    /**
+     * Writes a batch of lines. The list is reused after the call returns.
+     */
+    void write(final List<LogLine> lines);
+
+    default void close() {
+    }
+}
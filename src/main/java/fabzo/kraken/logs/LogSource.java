@@ -0,0 +1,19 @@
+package fabzo.kraken.logs;
+
+import java.io.Closeable;
+import java.io.OutputStream;
+
+/**
+ * Access to the raw output of a running component, registered with the
+ * {@link fabzo.kraken.EnvironmentContext} by its lifecycle handler.
+ */
+@FunctionalInterface
+public interface LogSource {
+
+    /**
+     * Writes the output of the component, starting with its first line, to the given
+     * stream until the returned handle is closed. The stream is closed when the output
+     * of the component ends before that.
+     */
+    Closeable follow(final OutputStream output);
+}
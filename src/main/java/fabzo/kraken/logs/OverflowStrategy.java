@@ -0,0 +1,16 @@
+package fabzo.kraken.logs;
+
+/**
+ * Behaviour of a log buffer that is full because the sinks cannot keep up.
+ */
+public enum OverflowStrategy {
+    /**
+     * Discards the oldest buffered line. Never slows down the container.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Blocks the log stream until the drainer has made room or the pipeline has been closed.
+     */
+    BLOCK
+}
@@ -0,0 +1,23 @@
+package fabzo.kraken.logs;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.List;
+
+/**
+ * Writes component logs to SLF4J, prefixed with the component name.
+ */
+@Slf4j
+public class Slf4jLogSink implements LogSink {
+
+    @Override
+    public void write(final List<LogLine> lines) {
+        if (!log.isInfoEnabled()) {
+            return;
+        }
+
+        for (final LogLine line : lines) {
+            log.info("[{}] {}", line.component(), line);
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package fabzo.kraken.logs;
+
+import io.vavr.collection.List;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Keeps the last lines of every component in memory, e.g. to attach them to a
+ * failing test.
+ */
+public class TailLogSink implements LogSink {
+    private final int linesPerComponent;
+    private final Map<String, Deque<LogLine>> tails = new HashMap<>();
+
+    public TailLogSink(final int linesPerComponent) {
+        this.linesPerComponent = linesPerComponent;
+    }
+
+    @Override
+    public synchronized void write(final java.util.List<LogLine> lines) {
+        for (final LogLine line : lines) {
+            final Deque<LogLine> tail = tails.computeIfAbsent(line.component(), name -> new ArrayDeque<>(linesPerComponent));
+            if (tail.size() == linesPerComponent) {
+                tail.removeFirst();
+            }
+            tail.addLast(line);
+        }
+    }
+
+    /**
+     * Returns the last lines of the component, oldest first.
+     */
+    public synchronized List<LogLine> tail(final String component) {
+        final Deque<LogLine> tail = tails.get(component);
+        return tail == null ? List.empty() : List.ofAll(tail);
+    }
+}
@@ -0,0 +1,203 @@
+package fabzo.kraken.utils;
+
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.Properties;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Small fixed size connection pool for tests. Connections are validated with
+ * {@link Connection#isValid} when they are borrowed, closing a borrowed connection
+ * returns it to the pool.
+ */
+@Slf4j
+public class PooledDataSource implements DataSource, AutoCloseable {
+    private static final int VALIDATION_TIMEOUT_SECONDS = 1;
+
+    private final String url;
+    private final Properties properties;
+    private final int size;
+    private final Semaphore permits;
+    private final BlockingQueue<Connection> idle = new LinkedBlockingQueue<>();
+
+    private volatile boolean closed = false;
+    private volatile int loginTimeoutSeconds = 30;
+
+    public PooledDataSource(final String url, final Properties properties, final int size) {
+        this.url = url;
+        this.properties = properties;
+        this.size = size;
+        this.permits = new Semaphore(size);
+    }
+
+    /**
+     * Opens all connections of the pool up front.
+     */
+    public PooledDataSource warm() throws SQLException {
+        for (int i = idle.size(); i < size; i++) {
+            idle.add(DriverManager.getConnection(url, properties));
+        }
+        return this;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        if (closed) {
+            throw new SQLException("Data source has been closed");
+        }
+
+        try {
+            if (!permits.tryAcquire(loginTimeoutSeconds, TimeUnit.SECONDS)) {
+                throw new SQLException("No connection available within " + loginTimeoutSeconds + " seconds");
+            }
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SQLException("Interrupted while waiting for a connection", e);
+        }
+
+        try {
+            return borrowed(validConnection());
+        } catch (final SQLException | RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    private Connection validConnection() throws SQLException {
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            if (connection.isValid(VALIDATION_TIMEOUT_SECONDS)) {
+                return connection;
+            }
+            log.debug("Discarding invalid connection to {}", url);
+            Try.run(connection::close);
+        }
+        return DriverManager.getConnection(url, properties);
+    }
+
+    /**
+     * Returns the connection to the idle queue before freeing its permit, a waiting borrower
+     * would otherwise open a new connection instead of taking this one.
+     */
+    private void release(final Connection connection) {
+        try {
+            if (closed || !Try.of(() -> connection.getAutoCommit() || rollback(connection)).getOrElse(false)) {
+                Try.run(connection::close);
+            } else {
+                idle.add(connection);
+                if (closed && idle.remove(connection)) {
+                    // Closed while the connection was returned
+                    Try.run(connection::close);
+                }
+            }
+        } finally {
+            permits.release();
+        }
+    }
+
+    private boolean rollback(final Connection connection) throws SQLException {
+        connection.rollback();
+        connection.setAutoCommit(true);
+        return true;
+    }
+
+    private Connection borrowed(final Connection connection) {
+        val returned = new AtomicBoolean(false);
+
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "close":
+                            if (returned.compareAndSet(false, true)) {
+                                release(connection);
+                            }
+                            return null;
+                        case "isClosed":
+                            return returned.get() || connection.isClosed();
+                        default:
+                            if (returned.get()) {
+                                throw new SQLException("Connection has been closed");
+                            }
+                            return invoke(connection, method, args);
+                    }
+                });
+    }
+
+    private static Object invoke(final Connection connection, final Method method, final Object[] args) throws Throwable {
+        try {
+            return method.invoke(connection, args);
+        } catch (final InvocationTargetException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Closes all idle connections. Borrowed connections are closed once they are returned.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            Try.run(connection::close);
+        }
+    }
+
+    @Override
+    public Connection getConnection(final String username, final String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Credentials are part of the connection URL");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() {
+        return null;
+    }
+
+    @Override
+    public void setLogWriter(final PrintWriter out) {
+    }
+
+    @Override
+    public void setLoginTimeout(final int seconds) {
+        this.loginTimeoutSeconds = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() {
+        return loginTimeoutSeconds;
+    }
+
+    @Override
+    public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    public <T> T unwrap(final Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper for " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(final Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,143 @@
+package fabzo.kraken.utils;
+
+import io.vavr.collection.List;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Hands out host ports from fixed ranges without probing them. Ports allocated by this JVM
+ * are tracked in a bitmap, other JVMs (e.g. parallel test forks) are excluded by holding an
+ * exclusive lock on the byte at the offset of the port in a shared lock file. Locks are
+ * released by the operating system if a JVM dies, so ports of crashed forks are not lost.
+ * <br>
+ * The default range lies below the ephemeral port ranges of Linux, macOS and Windows, so
+ * that allocated ports do not collide with outgoing connections.
+ */
+@Slf4j
+public class PortAllocator {
+    public static final PortRange DEFAULT_RANGE = PortRange.of(20000, 32767);
+
+    private static final PortAllocator SHARED = new PortAllocator(
+            Paths.get(System.getProperty("java.io.tmpdir"), "kraken-ports.lock"));
+
+    private final Path lockFile;
+    private final BitSet allocated = new BitSet(65536);
+    private final Map<Integer, FileLock> locks = new HashMap<>();
+    private final int offset = ThreadLocalRandom.current().nextInt(65536);
+    private FileChannel channel;
+    private boolean lockFileUnavailable = false;
+
+    /**
+     * Allocator shared by all environments of this JVM.
+     */
+    public static PortAllocator shared() {
+        return SHARED;
+    }
+
+    public PortAllocator(final Path lockFile) {
+        this.lockFile = lockFile;
+    }
+
+    /**
+     * Allocates a port from the first range that has one available. Every JVM starts
+     * searching a range at a different position to keep forks from competing for the
+     * same ports.
+     *
+     * @throws IllegalStateException if all ports of the ranges are allocated
+     */
+    public synchronized int allocate(final List<PortRange> ranges) {
+        for (final PortRange range : ranges) {
+            val start = range.from() + offset % range.size();
+            for (int i = 0; i < range.size(); i++) {
+                val port = start + i > range.to() ? start + i - range.size() : start + i;
+                if (!allocated.get(port) && lock(port)) {
+                    allocated.set(port);
+                    return port;
+                }
+            }
+        }
+        throw new IllegalStateException("No port available in " + ranges.mkString(", "));
+    }
+
+    /**
+     * Marks a port that is already in use as allocated, e.g. the host port of a reused container
+     * or a port docker reported as taken. Other JVMs are excluded as well if the port is not
+     * locked by one of them yet.
+     *
+     * @return Whether the port has not been allocated by this JVM before
+     */
+    public synchronized boolean reserve(final int port) {
+        if (allocated.get(port)) {
+            return false;
+        }
+        lock(port);
+        allocated.set(port);
+        return true;
+    }
+
+    /**
+     * Returns the port, it may be allocated again by any JVM.
+     */
+    public synchronized void release(final int port) {
+        if (!allocated.get(port)) {
+            return;
+        }
+        allocated.clear(port);
+        val lock = locks.remove(port);
+        if (lock != null) {
+            Try.run(lock::release);
+        }
+    }
+
+    public synchronized boolean isAllocated(final int port) {
+        return allocated.get(port);
+    }
+
+    private boolean lock(final int port) {
+        val lockChannel = channel();
+        if (lockChannel == null) {
+            return true;
+        }
+
+        try {
+            val lock = lockChannel.tryLock(port, 1, false);
+            if (lock == null) {
+                return false;
+            }
+            locks.put(port, lock);
+            return true;
+        } catch (final OverlappingFileLockException e) {
+            // Another allocator of this JVM uses the same lock file
+            return false;
+        } catch (final IOException e) {
+            log.warn("Failed to lock port {} in {}: {}", port, lockFile, e.getMessage());
+            return true;
+        }
+    }
+
+    private FileChannel channel() {
+        if (channel == null && !lockFileUnavailable) {
+            try {
+                channel = FileChannel.open(lockFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            } catch (final IOException e) {
+                log.warn("Unable to open port lock file {}, ports are only coordinated within this JVM: {}",
+                        lockFile, e.getMessage());
+                lockFileUnavailable = true;
+            }
+        }
+        return channel;
+    }
+}
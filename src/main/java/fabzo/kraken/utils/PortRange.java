@@ -0,0 +1,42 @@
+package fabzo.kraken.utils;
+
+/**
+ * Inclusive range of TCP ports.
+ */
+public class PortRange {
+    private final int from;
+    private final int to;
+
+    public static PortRange of(final int from, final int to) {
+        return new PortRange(from, to);
+    }
+
+    private PortRange(final int from, final int to) {
+        if (from < 1 || to > 65535 || from > to) {
+            throw new IllegalArgumentException("Invalid port range " + from + "-" + to);
+        }
+        this.from = from;
+        this.to = to;
+    }
+
+    public int from() {
+        return from;
+    }
+
+    public int to() {
+        return to;
+    }
+
+    public int size() {
+        return to - from + 1;
+    }
+
+    public boolean contains(final int port) {
+        return port >= from && port <= to;
+    }
+
+    @Override
+    public String toString() {
+        return from + "-" + to;
+    }
+}
@@ -0,0 +1,105 @@
+package fabzo.kraken.utils;
+
+import io.vavr.collection.HashMap;
+import io.vavr.collection.Map;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.val;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Labels identifying the process that created a container, network or kubernetes resource.
+ * Resources whose owner is gone can be recognized and removed by later runs.
+ */
+public class ResourceOwner {
+    public static final String LABEL_SALT = "kraken.salt";
+    public static final String LABEL_OWNER_PID = "kraken.owner-pid";
+    public static final String LABEL_OWNER_HOST = "kraken.owner-host";
+    public static final String LABEL_CREATED = "kraken.created";
+
+    private static final ResourceOwner CURRENT = new ResourceOwner();
+
+    private final String pid;
+    private final String host;
+
+    public static ResourceOwner current() {
+        return CURRENT;
+    }
+
+    private ResourceOwner() {
+        // The name of the runtime is "pid@hostname" on all common JVMs
+        val runtimeName = ManagementFactory.getRuntimeMXBean().getName();
+        val separator = runtimeName.indexOf('@');
+        this.pid = separator > 0 ? runtimeName.substring(0, separator) : runtimeName;
+        this.host = labelValue(separator > 0 ? runtimeName.substring(separator + 1) : "unknown");
+    }
+
+    public String pid() {
+        return pid;
+    }
+
+    public String host() {
+        return host;
+    }
+
+    /**
+     * Labels for a resource created now by this process. All values are valid kubernetes
+     * label values.
+     */
+    public Map<String, String> labels(final String salt) {
+        return HashMap.of(
+                LABEL_SALT, salt,
+                LABEL_OWNER_PID, pid,
+                LABEL_OWNER_HOST, host,
+                LABEL_CREATED, String.valueOf(System.currentTimeMillis()));
+    }
+
+    /**
+     * Whether the resource carrying the labels has been left behind by another run. That is
+     * the case if it is older than the max age, or if its owner ran on this host and is no
+     * longer alive. Resources without owner labels are never orphaned.
+     */
+    public boolean isOrphaned(final java.util.Map<String, String> labels, final Option<Duration> maxAge) {
+        if (labels == null || !labels.containsKey(LABEL_OWNER_PID) || !labels.containsKey(LABEL_OWNER_HOST)) {
+            return false;
+        }
+
+        val ownerPid = labels.get(LABEL_OWNER_PID);
+        val ownerHost = labels.get(LABEL_OWNER_HOST);
+        if (ownerHost.equals(host) && ownerPid.equals(pid)) {
+            return false;
+        }
+
+        val created = Option.of(labels.get(LABEL_CREATED)).flatMap(value -> Try.of(() -> Long.valueOf(value)).toOption());
+        val expired = maxAge.isDefined() && created.isDefined()
+                && System.currentTimeMillis() - created.get() > maxAge.get().toMillis();
+
+        return expired || (ownerHost.equals(host) && !isAlive(ownerPid));
+    }
+
+    /**
+     * Whether the process with the pid is alive. Processes whose state cannot be determined
+     * are considered alive.
+     */
+    private static boolean isAlive(final String pid) {
+        if (Files.isDirectory(Paths.get("/proc/self"))) {
+            return Files.isDirectory(Paths.get("/proc", pid));
+        }
+
+        return Try.of(() -> {
+            val process = new ProcessBuilder("ps", "-p", pid).start();
+            return !process.waitFor(5, TimeUnit.SECONDS) || process.exitValue() == 0;
+        }).getOrElse(true);
+    }
+
+    private static String labelValue(final String value) {
+        val sanitized = value.replaceAll("[^A-Za-z0-9._-]", "-");
+        return (sanitized.length() > 63 ? sanitized.substring(0, 63) : sanitized)
+                .replaceAll("^[^A-Za-z0-9]+|[^A-Za-z0-9]+$", "");
+    }
+}
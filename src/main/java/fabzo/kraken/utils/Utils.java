@@ -1,20 +1,16 @@
 package fabzo.kraken.utils;
 
-import io.vavr.collection.HashSet;
-import io.vavr.collection.Set;
+import io.vavr.collection.List;
 import io.vavr.control.Try;
 import lombok.val;
 
 import java.net.Inet4Address;
 import java.net.InetAddress;
 import java.net.NetworkInterface;
-import java.net.ServerSocket;
 import java.util.Enumeration;
 
 public class Utils {
     private static final String RUNNING_IN_IDE = "RUNNING_IN_IDE";
-    private static final Object ASSIGNED_PORTS_MONITOR = new Object();
-    private static Set<Integer> assignedPorts = HashSet.empty();
 
     public static boolean isRunningInIDE() {
         final boolean foundIdeaRtJar = System.getProperty("java.class.path").contains("idea_rt.jar");
@@ -27,21 +23,12 @@ public class Utils {
         return foundIdeaRtJar || "true".equalsIgnoreCase(runningInIDE);
     }
 
+    /**
+     * @deprecated Use {@link PortAllocator#shared()}, ports are allocated from its default range.
+     */
+    @Deprecated
     public static Try<Integer> getAvailablePort() {
-        synchronized (ASSIGNED_PORTS_MONITOR) {
-            return Try.of(() -> {
-                int hostPort;
-                do {
-                    final ServerSocket serverSocket = new ServerSocket(0);
-                    hostPort = serverSocket.getLocalPort();
-                    serverSocket.close();
-                } while (assignedPorts.contains(hostPort));
-
-                assignedPorts = assignedPorts.add(hostPort);
-
-                return hostPort;
-            });
-        }
+        return Try.of(() -> PortAllocator.shared().allocate(List.of(PortAllocator.DEFAULT_RANGE)));
     }
 
     public static Try<String> getPublicFacingIP() {
@@ -3,22 +3,22 @@ package fabzo.kraken.wait;
 import com.google.common.base.MoreObjects;
 import fabzo.kraken.EnvironmentContext;
 import fabzo.kraken.components.InfrastructureComponent;
+import fabzo.kraken.utils.PooledDataSource;
 import io.vavr.control.Option;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 
 import java.sql.DriverManager;
+import java.sql.SQLException;
 import java.time.Duration;
 import java.util.Properties;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.atomic.AtomicInteger;
 
-import static com.jayway.awaitility.Awaitility.await;
-
 @Slf4j
-public class DatabaseWait implements Wait {
+public class DatabaseWait extends ProbeWait {
     private static final String DEFAULT_JDBC_URL = "jdbc:%s://%s:%s/%s?user=%s&password=%s&useUnicode=true&characterEncoding=utf8&useSSL=false&nullNamePatternMatchesAll=true&socketTimeout=5000";
-    private static final String TEST_SQL = "SELECT 1";
+    private static final int VALIDATION_TIMEOUT_SECONDS = 2;
 
     private String username = "root";
     private String password = "";
@@ -26,22 +26,39 @@ public class DatabaseWait implements Wait {
     private String driver;
     private String database;
     private String portName;
-    private final Duration atMost;
 
     private Option<String> connectionUrl = Option.none();
+    private Option<Integer> poolSize = Option.none();
 
     public DatabaseWait(final String driver, final String database, final String username, final String password, final String portName, final Duration atMost) {
+        super(atMost);
         this.driver = driver;
         this.database = database;
         this.portName = portName;
         this.username = username;
         this.password = password;
-        this.atMost = atMost;
     }
 
     public DatabaseWait(final String connectionUrl, final Duration atMost) {
+        super(atMost);
         this.connectionUrl = Option.of(connectionUrl);
-        this.atMost = atMost;
+    }
+
+    /**
+     * Once the database is available, opens a pool of connections and publishes it as
+     * {@link EnvironmentContext#dataSource data source} of the component. The pool is
+     * closed together with the environment.
+     */
+    public DatabaseWait withDataSource(final int poolSize) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1");
+        }
+        this.poolSize = Option.of(poolSize);
+        return this;
+    }
+
+    public DatabaseWait withDataSource() {
+        return withDataSource(4);
     }
 
     private String createConnectionUrl(final InfrastructureComponent component, final EnvironmentContext ctx) {
@@ -54,34 +71,58 @@ public class DatabaseWait implements Wait {
         return String.format(DEFAULT_JDBC_URL, driver, ip, port.get(), database, username, password);
     }
 
+    private String connectionUrl(final InfrastructureComponent component, final EnvironmentContext ctx) {
+        return ctx.resolve(connectionUrl.getOrElse(() -> createConnectionUrl(component, ctx)));
+    }
+
+    private Properties connectionProperties(final Duration connectTimeout) {
+        val properties = new Properties();
+        properties.put("connectTimeout", String.valueOf(connectTimeout.toMillis()));
+        return properties;
+    }
+
     @Override
-    public boolean execute(final EnvironmentContext ctx, final InfrastructureComponent component) {
-        val url = ctx.resolve(connectionUrl.getOrElse(() -> createConnectionUrl(component, ctx)));
+    protected Probe probe(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        val url = connectionUrl(component, ctx);
 
-        log.info("Waiting for database to become available for up to {}", atMost);
+        log.info("Waiting for database to become available for up to {}", atMost());
         log.info("Connection URL is {}", url);
 
-        val properties = new Properties();
-        properties.put("connectTimeout", "5000");
-
         val counter = new AtomicInteger();
-        await().atMost(atMost.toMillis(), TimeUnit.MILLISECONDS).until(() -> {
+        return ctx.readiness().blocking(timeout -> {
             log.debug("Connection attempt ({}) to {}", counter.incrementAndGet(), database);
-            try (val connection = DriverManager.getConnection(url, properties);
-                 val statement = connection.prepareStatement(TEST_SQL)) {
-
-                statement.execute();
-                return true;
-            } catch(final Exception ignored) {
-                log.debug(" -> Attempt ({}) failed due to {}[{}]",
-                        counter.get(),
-                        ignored.getClass().getSimpleName(),
-                        ignored.getMessage());
-                return false;
+
+            try (val connection = DriverManager.getConnection(url, connectionProperties(timeout))) {
+                return connection.isValid(VALIDATION_TIMEOUT_SECONDS);
             }
         });
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        val ready = super.executeAsync(ctx, component);
+        if (poolSize.isEmpty()) {
+            return ready;
+        }
 
-        return true;
+        val published = ready.thenApplyAsync(isReady -> isReady && publishDataSource(ctx, component),
+                ctx.readiness().blockingExecutor());
+        published.whenComplete((ignored, error) -> ready.cancel(false));
+        return published;
+    }
+
+    private boolean publishDataSource(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        val dataSource = new PooledDataSource(connectionUrl(component, ctx),
+                connectionProperties(retryPolicy().attemptTimeout()), poolSize.get());
+        try {
+            ctx.setDataSource(component.name(), dataSource.warm());
+            log.info("Published data source of {} with {} connection(s)", component.name(), poolSize.get());
+            return true;
+        } catch (final SQLException e) {
+            log.warn("Failed to open the connection pool of {}: {}", component.name(), e.getMessage());
+            dataSource.close();
+            return false;
+        }
     }
 
     @Override
@@ -91,8 +132,9 @@ public class DatabaseWait implements Wait {
                 .add("driver", driver)
                 .add("database", database)
                 .add("portName", portName)
-                .add("atMost", atMost)
+                .add("atMost", atMost())
                 .add("connectionUrl", connectionUrl)
+                .add("poolSize", poolSize)
                 .toString();
     }
 }
@@ -0,0 +1,64 @@
+package fabzo.kraken.wait;
+
+import com.google.common.base.MoreObjects;
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.InfrastructureComponent;
+import io.vavr.collection.List;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+
+/**
+ * Waits for a command executed inside the component to exit with 0, e.g. pg_isready.
+ * The command is executed by the lifecycle handler of the component (docker exec or
+ * kubernetes exec), it does not depend on published ports.
+ */
+@Slf4j
+public class ExecWait extends ProbeWait {
+    private final List<String> command;
+
+    /**
+     * Executes the command using sh inside the component.
+     */
+    public static ExecWait command(final String command, final Duration atMost) {
+        return new ExecWait(List.of("sh", "-c", command), atMost);
+    }
+
+    /**
+     * Executes the command without a shell.
+     */
+    public static ExecWait exec(final Duration atMost, final String... command) {
+        return new ExecWait(List.of(command), atMost);
+    }
+
+    private ExecWait(final List<String> command, final Duration atMost) {
+        super(atMost);
+        this.command = command;
+    }
+
+    @Override
+    protected Probe probe(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        val commandRunner = ctx.commandRunner(component.name());
+        if (commandRunner.isEmpty()) {
+            throw new IllegalStateException("Unable to execute commands inside " + component.name());
+        }
+
+        log.debug("Waiting for {} to exit with 0 inside {}", command.mkString(" "), component.name());
+        val execution = commandRunner.get().prepare(command);
+
+        return ctx.readiness().blocking(timeout -> execution.run(timeout) == 0);
+    }
+
+    public List<String> command() {
+        return command;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("command", command.mkString(" "))
+                .add("atMost", atMost())
+                .toString();
+    }
+}
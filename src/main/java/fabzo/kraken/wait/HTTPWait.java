@@ -1,66 +1,220 @@
 package fabzo.kraken.wait;
 
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.MoreObjects;
 import fabzo.kraken.EnvironmentContext;
 import fabzo.kraken.components.InfrastructureComponent;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
-import org.apache.commons.io.IOUtils;
+import org.apache.http.HttpEntity;
 import org.apache.http.client.config.RequestConfig;
 import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClients;
-import org.apache.http.impl.conn.BasicHttpClientConnectionManager;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
-import java.util.concurrent.TimeUnit;
-
-import static com.jayway.awaitility.Awaitility.await;
+import java.util.Arrays;
+import java.util.function.IntPredicate;
+import java.util.function.Predicate;
 
+/**
+ * Waits for an HTTP endpoint to respond as expected. Requests are sent through the pooled
+ * client of the {@link ReadinessScheduler}, responses are always released and at most
+ * {@link #withMaxBodySize max body size} bytes of the body are read.
+ * <br>
+ * Without any predicate a 2xx status code is expected. The URL may contain references
+ * like ${component.ports.http.from}.
+ */
 @Slf4j
-public class HTTPWait implements Wait {
+public class HTTPWait extends ProbeWait {
+    private static final ObjectMapper OBJECT_MAPPER = new ObjectMapper();
+
     private final String url;
-    private final String containsText;
-    private final Duration atMost;
+    private Option<IntPredicate> statusCode = Option.none();
+    private Option<byte[]> containsText = Option.none();
+    private List<JsonPathPredicate> jsonPaths = List.empty();
+    private int maxBodySize = 64 * 1024;
+
+    public static HTTPWait on(final String url, final Duration atMost) {
+        return new HTTPWait(url, null, atMost);
+    }
 
     public HTTPWait(final String url, final String containsText, final Duration atMost) {
+        super(atMost);
         this.url = url;
-        this.containsText = containsText;
-        this.atMost = atMost;
+        this.containsText = Option.of(containsText).map(text -> text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Expects the given status code.
+     */
+    public HTTPWait withStatusCode(final int statusCode) {
+        return withStatusCode(code -> code == statusCode);
+    }
+
+    public HTTPWait withStatusCode(final IntPredicate statusCode) {
+        this.statusCode = Option.of(statusCode);
+        return this;
+    }
+
+    /**
+     * Expects the body to contain the given text within the first max body size bytes.
+     */
+    public HTTPWait withBodyContaining(final String text) {
+        this.containsText = Option.of(text.getBytes(StandardCharsets.UTF_8));
+        return this;
+    }
+
+    /**
+     * Expects the body to be JSON with the value at the given path matching the predicate.
+     * Paths are either JSON pointers (/status) or simple JSON paths ($.checks[0].status).
+     */
+    public HTTPWait withJsonPath(final String path, final Predicate<JsonNode> predicate) {
+        this.jsonPaths = jsonPaths.append(new JsonPathPredicate(path, toPointer(path), predicate));
+        return this;
+    }
+
+    /**
+     * Expects the body to be JSON with the text value at the given path being equal to the expected value.
+     */
+    public HTTPWait withJsonPath(final String path, final String expectedValue) {
+        return withJsonPath(path, node -> !node.isMissingNode() && expectedValue.equals(node.asText()));
+    }
+
+    /**
+     * Maximum number of bytes read from the body to match the text and JSON predicates.
+     * <br>
+     * Default: 65536
+     */
+    public HTTPWait withMaxBodySize(final int maxBodySize) {
+        this.maxBodySize = maxBodySize;
+        return this;
+    }
+
+    /**
+     * URL as given, references are resolved when waiting.
+     */
+    public String url() {
+        return url;
     }
 
     @Override
-    public boolean execute(final EnvironmentContext ctx, final InfrastructureComponent component) {
-        val defaultRequestConfig = RequestConfig.custom()
-                .setConnectTimeout(2000)
-                .setSocketTimeout(2000)
-                .setConnectionRequestTimeout(2000)
-                .build();
-
-        val httpClient = HttpClients.custom()
-                .setConnectionManager(new BasicHttpClientConnectionManager())
-                .setDefaultRequestConfig(defaultRequestConfig)
-                .build();
-
-        await().atMost(atMost.toMillis(), TimeUnit.MILLISECONDS).until(() -> {
-            try {
-                val response = httpClient.execute(new HttpGet(url));
-                val result = IOUtils.toString(response.getEntity().getContent(), StandardCharsets.UTF_8);
-                return containsText != null && result.contains(containsText);
-            } catch(final Exception ignored) {
-                return false;
+    protected Probe probe(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        val resolvedUrl = ctx.resolve(url);
+        val httpClient = ctx.readiness().http();
+        log.debug("Waiting for {} to respond", resolvedUrl);
+
+        return ctx.readiness().blocking(timeout -> {
+            val request = new HttpGet(resolvedUrl);
+            request.setConfig(RequestConfig.custom()
+                    .setConnectTimeout((int) timeout.toMillis())
+                    .setSocketTimeout((int) timeout.toMillis())
+                    .setConnectionRequestTimeout((int) timeout.toMillis())
+                    .build());
+
+            // Closing the response returns the connection to the pool or discards it if the body has not been read completely
+            try (val response = httpClient.execute(request)) {
+                val code = response.getStatusLine().getStatusCode();
+                if (!statusCode.getOrElse(HTTPWait::isSuccessful).test(code)) {
+                    return false;
+                }
+
+                if (containsText.isEmpty() && jsonPaths.isEmpty()) {
+                    return true;
+                }
+                return response.getEntity() != null && matchesBody(response.getEntity());
             }
         });
+    }
+
+    private static boolean isSuccessful(final int statusCode) {
+        return statusCode >= 200 && statusCode < 300;
+    }
+
+    private boolean matchesBody(final HttpEntity entity) throws IOException {
+        val stopOnMatch = jsonPaths.isEmpty();
+        byte[] body = new byte[Math.min(maxBodySize, 8192)];
+        int length = 0;
+        boolean containsMatched = containsText.isEmpty();
+
+        try (final InputStream content = entity.getContent()) {
+            int read;
+            while (length < maxBodySize && (read = content.read(body, length, Math.min(body.length, maxBodySize) - length)) != -1) {
+                val searchFrom = Math.max(0, length - containsText.map(text -> text.length).getOrElse(0) + 1);
+                length += read;
+
+                if (!containsMatched && indexOf(body, searchFrom, length, containsText.get()) >= 0) {
+                    containsMatched = true;
+                    if (stopOnMatch) {
+                        return true;
+                    }
+                }
+                if (length == body.length && body.length < maxBodySize) {
+                    body = Arrays.copyOf(body, Math.min(body.length * 2, maxBodySize));
+                }
+            }
+        }
+
+        if (!containsMatched || jsonPaths.isEmpty()) {
+            return containsMatched;
+        }
 
-        return true;
+        val json = OBJECT_MAPPER.readTree(Arrays.copyOf(body, length));
+        return jsonPaths.forAll(jsonPath -> jsonPath.predicate.test(json.at(jsonPath.pointer)));
+    }
+
+    private static int indexOf(final byte[] bytes, final int from, final int to, final byte[] target) {
+        outer:
+        for (int i = from; i <= to - target.length; i++) {
+            for (int j = 0; j < target.length; j++) {
+                if (bytes[i + j] != target[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Converts a simple JSON path like $.checks[0].status to a JSON pointer.
+     */
+    private static JsonPointer toPointer(final String path) {
+        if (path.startsWith("/") || path.isEmpty()) {
+            return JsonPointer.compile(path);
+        }
+
+        val pointer = path.replaceFirst("^\\$\\.?", "")
+                .replaceAll("\\[(\\d+)]", ".$1")
+                .replace('.', '/');
+        return JsonPointer.compile(pointer.isEmpty() ? "" : "/" + pointer);
     }
 
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("url", url)
-                .add("containsText", containsText)
-                .add("atMost", atMost)
+                .add("statusCode", statusCode.isDefined() ? "custom" : "2xx")
+                .add("containsText", containsText.map(text -> new String(text, StandardCharsets.UTF_8)))
+                .add("jsonPaths", jsonPaths.map(jsonPath -> jsonPath.path))
+                .add("atMost", atMost())
                 .toString();
     }
+
+    private static class JsonPathPredicate {
+        private final String path;
+        private final JsonPointer pointer;
+        private final Predicate<JsonNode> predicate;
+
+        JsonPathPredicate(final String path, final JsonPointer pointer, final Predicate<JsonNode> predicate) {
+            this.path = path;
+            this.pointer = pointer;
+            this.predicate = predicate;
+        }
+    }
 }
@@ -0,0 +1,25 @@
+package fabzo.kraken.wait;
+
+import io.vavr.control.Option;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Minimal exchange with a service proving that it is ready, executed by the
+ * {@link TcpProber} right after connecting.
+ */
+public interface Handshake {
+
+    /**
+     * Bytes sent once connected. Empty if the server speaks first.
+     */
+    ByteBuffer request();
+
+    /**
+     * Decides based on the bytes received so far whether the service is ready.
+     *
+     * @param received Received bytes, ready to be read
+     * @return The decision or none if more bytes are needed
+     */
+    Option<Boolean> response(final ByteBuffer received);
+}
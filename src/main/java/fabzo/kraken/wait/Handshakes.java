@@ -0,0 +1,170 @@
+package fabzo.kraken.wait;
+
+import io.vavr.control.Option;
+import lombok.val;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire level handshakes of common services. Each of them needs a single round trip
+ * and no driver.
+ */
+public class Handshakes {
+    private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
+    private Handshakes() {
+    }
+
+    /**
+     * Ready once the server sent any byte.
+     */
+    public static Handshake greeting() {
+        return handshake(EMPTY, received -> received.hasRemaining() ? Option.of(true) : Option.none());
+    }
+
+    /**
+     * Ready once the server sent its initial handshake packet (protocol version 10).
+     * Servers that are still initializing or refuse the connection send an error packet instead.
+     */
+    public static Handshake mysql() {
+        return handshake(EMPTY, received -> {
+            // 3 byte payload length, 1 byte sequence id, then the protocol version or 0xff for errors
+            if (received.remaining() < 5) {
+                return Option.none();
+            }
+            return Option.of(received.get(4) == 0x0a);
+        });
+    }
+
+    /**
+     * Sends a startup message and is ready once the server answers with an authentication
+     * request. Errors other than "the database system is starting up" (57P03) mean that the
+     * server accepts connections, e.g. if the user does not exist.
+     */
+    public static Handshake postgres(final String user) {
+        val parameters = ("user\0" + user + "\0database\0" + user + "\0\0").getBytes(StandardCharsets.UTF_8);
+        val request = ByteBuffer.allocate(8 + parameters.length);
+        request.putInt(8 + parameters.length).putInt(196608).put(parameters).flip();
+
+        return handshake(request, received -> {
+            // 1 byte message type, 4 byte length including itself
+            if (received.remaining() < 5) {
+                return Option.none();
+            }
+
+            val type = received.get(0);
+            if (type == 'R') {
+                return Option.of(true);
+            }
+            if (type != 'E') {
+                return Option.of(false);
+            }
+
+            val length = received.getInt(1);
+            if (length < 4) {
+                return Option.of(false);
+            }
+            if (received.remaining() < length + 1) {
+                return Option.none();
+            }
+            return Option.of(!sqlState(received, length).equals("57P03"));
+        });
+    }
+
+    private static String sqlState(final ByteBuffer received, final int length) {
+        // Error fields are a type byte followed by a null terminated string, 'C' holds the code
+        val end = Math.min(length + 1, received.remaining());
+        int position = 5;
+        while (position < end && received.get(position) != 0) {
+            val fieldType = received.get(position++);
+            val start = position;
+            while (position < end && received.get(position) != 0) {
+                position++;
+            }
+            if (position == end) {
+                // Malformed, the field is not terminated within the message
+                break;
+            }
+            if (fieldType == 'C') {
+                val code = new byte[position - start];
+                for (int i = 0; i < code.length; i++) {
+                    code[i] = received.get(start + i);
+                }
+                return new String(code, StandardCharsets.US_ASCII);
+            }
+            position++;
+        }
+        return "";
+    }
+
+    /**
+     * Sends PING and is ready on PONG. A server requiring authentication (NOAUTH) is ready as
+     * well, a server that is still loading its dataset (LOADING) is not.
+     */
+    public static Handshake redis() {
+        val request = ByteBuffer.wrap("*1\r\n$4\r\nPING\r\n".getBytes(StandardCharsets.US_ASCII));
+
+        return handshake(request, received -> {
+            val line = line(received);
+            if (line.isEmpty()) {
+                return Option.none();
+            }
+            return Option.of(line.get().equals("+PONG") || line.get().startsWith("-NOAUTH"));
+        });
+    }
+
+    private static Option<String> line(final ByteBuffer received) {
+        for (int i = 0; i < received.remaining() - 1; i++) {
+            if (received.get(i) == '\r' && received.get(i + 1) == '\n') {
+                val bytes = new byte[i];
+                received.duplicate().get(bytes);
+                return Option.of(new String(bytes, StandardCharsets.US_ASCII));
+            }
+        }
+        return Option.none();
+    }
+
+    /**
+     * Sends an ApiVersions request (version 0) and is ready once the broker answers it
+     * without an error.
+     */
+    public static Handshake kafka() {
+        val correlationId = 0x6b72616b;
+        val clientId = "kraken".getBytes(StandardCharsets.US_ASCII);
+
+        // size, api key 18 (ApiVersions), api version 0, correlation id, client id
+        val request = ByteBuffer.allocate(4 + 2 + 2 + 4 + 2 + clientId.length).order(ByteOrder.BIG_ENDIAN);
+        request.putInt(request.capacity() - 4)
+                .putShort((short) 18)
+                .putShort((short) 0)
+                .putInt(correlationId)
+                .putShort((short) clientId.length)
+                .put(clientId)
+                .flip();
+
+        return handshake(request, received -> {
+            // size, correlation id, error code
+            if (received.remaining() < 10) {
+                return Option.none();
+            }
+            return Option.of(received.getInt(4) == correlationId && received.getShort(8) == 0);
+        });
+    }
+
+    private static Handshake handshake(final ByteBuffer request, final java.util.function.Function<ByteBuffer, Option<Boolean>> response) {
+        return new Handshake() {
+            @Override
+            public ByteBuffer request() {
+                return request.duplicate();
+            }
+
+            @Override
+            public Option<Boolean> response(final ByteBuffer received) {
+                // The decisions read with absolute indexes relative to the first received byte
+                return response.apply(received.slice());
+            }
+        };
+    }
+}
@@ -0,0 +1,66 @@
+package fabzo.kraken.wait;
+
+import com.google.common.base.MoreObjects;
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.InfrastructureComponent;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Waits for the health check of the component to report the component as healthy.
+ * Nothing is polled, the wait completes as soon as the handler receives the health
+ * status event.
+ */
+@Slf4j
+public class HealthyWait implements Wait {
+    private final Duration atMost;
+
+    public static HealthyWait atMost(final Duration atMost) {
+        return new HealthyWait(atMost);
+    }
+
+    private HealthyWait(final Duration atMost) {
+        this.atMost = atMost;
+    }
+
+    @Override
+    public boolean execute(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        return Wait.await(executeAsync(ctx, component));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        val healthy = ctx.healthStatus(component.name());
+        if (healthy.isEmpty()) {
+            log.warn("{} does not declare a health check", component.name());
+            return CompletableFuture.completedFuture(false);
+        }
+
+        val remaining = ctx.remaining(atMost);
+        return ctx.readiness().within(healthy.get(), remaining).handle((ignored, error) -> {
+            if (error == null) {
+                return true;
+            }
+
+            val cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof TimeoutException) {
+                log.warn("{} did not become healthy within {}", component.name(), remaining);
+            } else {
+                log.warn("{} did not become healthy: {}", component.name(), cause.getMessage());
+            }
+            return false;
+        });
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("atMost", atMost)
+                .toString();
+    }
+}
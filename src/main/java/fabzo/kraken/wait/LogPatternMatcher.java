@@ -0,0 +1,124 @@
+package fabzo.kraken.wait;
+
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Output stream matching a pattern line by line against everything written to it.
+ * Lines are collected in a reused byte buffer that is exposed to the regex engine as
+ * a character sequence, so no strings are created for lines that do not match.
+ * <br>
+ * Bytes are mapped to characters one to one (ISO-8859-1), patterns should therefore
+ * only contain ASCII characters.
+ */
+class LogPatternMatcher extends OutputStream {
+    private static final int INITIAL_LINE_LENGTH = 256;
+    private static final int MAX_LINE_LENGTH = 64 * 1024;
+
+    private final Matcher matcher;
+    private final int occurrences;
+    private final CompletableFuture<Void> matched = new CompletableFuture<>();
+    private final LineSequence line = new LineSequence();
+
+    private int found = 0;
+
+    LogPatternMatcher(final Pattern pattern, final int occurrences) {
+        this.matcher = pattern.matcher("");
+        this.occurrences = occurrences;
+    }
+
+    /**
+     * Completes once the pattern has been found the expected number of times. Fails if the
+     * stream is closed before that.
+     */
+    CompletableFuture<Void> matched() {
+        return matched;
+    }
+
+    @Override
+    public void write(final int b) {
+        if (matched.isDone()) {
+            return;
+        }
+
+        if (b == '\n') {
+            matchLine();
+        } else {
+            line.append((byte) b);
+            if (line.length() == MAX_LINE_LENGTH) {
+                // Match overly long lines in chunks instead of growing without bounds
+                matchLine();
+            }
+        }
+    }
+
+    @Override
+    public void write(final byte[] bytes, final int offset, final int length) {
+        for (int i = offset; i < offset + length && !matched.isDone(); i++) {
+            write(bytes[i]);
+        }
+    }
+
+    @Override
+    public void close() {
+        // The last line of a stream does not necessarily end with a line break
+        if (line.length() > 0 && !matched.isDone()) {
+            matchLine();
+        }
+        if (!matched.isDone()) {
+            matched.completeExceptionally(new IllegalStateException(String.format(
+                    "The log ended after %d of %d occurrence(s) of %s", found, occurrences, matcher.pattern())));
+        }
+    }
+
+    private void matchLine() {
+        matcher.reset(line);
+        while (matcher.find()) {
+            if (++found == occurrences) {
+                matched.complete(null);
+                break;
+            }
+        }
+        line.clear();
+    }
+
+    private static class LineSequence implements CharSequence {
+        private byte[] bytes = new byte[INITIAL_LINE_LENGTH];
+        private int length = 0;
+
+        void append(final byte b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = b;
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(final int index) {
+            return (char) (bytes[index] & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(final int start, final int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package fabzo.kraken.wait;
+
+import com.google.common.base.MoreObjects;
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.InfrastructureComponent;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
+
+/**
+ * Waits for a pattern to appear in the output of the component, e.g. "ready for connections".
+ * The log is streamed from the first line of the component on, the wait completes as soon
+ * as the pattern has been found the given number of times. It fails right away if the log
+ * ends before that, e.g. because the container exited.
+ */
+@Slf4j
+public class LogWait implements Wait {
+    private final Pattern pattern;
+    private final Duration atMost;
+    private int occurrences = 1;
+
+    public static LogWait forPattern(final String regex, final Duration atMost) {
+        return new LogWait(Pattern.compile(regex), atMost);
+    }
+
+    private LogWait(final Pattern pattern, final Duration atMost) {
+        this.pattern = pattern;
+        this.atMost = atMost;
+    }
+
+    /**
+     * Number of times the pattern has to appear, e.g. for images that restart once
+     * after their initialization.
+     * <br>
+     * Default: 1
+     */
+    public LogWait times(final int occurrences) {
+        if (occurrences < 1) {
+            throw new IllegalArgumentException("Occurrences must be at least 1");
+        }
+        this.occurrences = occurrences;
+        return this;
+    }
+
+    @Override
+    public boolean execute(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        return Wait.await(executeAsync(ctx, component));
+    }
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        val logSource = ctx.logSource(component.name());
+        if (logSource.isEmpty()) {
+            log.warn("The log of {} can not be followed", component.name());
+            return CompletableFuture.completedFuture(false);
+        }
+
+        val matcher = new LogPatternMatcher(pattern, occurrences);
+        val logStream = logSource.get().follow(matcher);
+
+        val remaining = ctx.remaining(atMost);
+        val result = ctx.readiness().within(matcher.matched(), remaining).handle((ignored, error) -> {
+            if (error == null) {
+                return true;
+            }
+
+            val cause = error instanceof CompletionException ? error.getCause() : error;
+            if (cause instanceof TimeoutException) {
+                log.warn("{} did not log {} within {}", component.name(), pattern, remaining);
+            } else {
+                log.warn("Waiting for {} in the log of {} failed: {}", pattern, component.name(), cause.getMessage());
+            }
+            return false;
+        });
+
+        // Also closes the stream if the wait is cancelled
+        result.whenComplete((ignored, error) -> Try.run(logStream::close));
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("pattern", pattern)
+                .add("occurrences", occurrences)
+                .add("atMost", atMost)
+                .toString();
+    }
+}
@@ -0,0 +1,18 @@
+package fabzo.kraken.wait;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A single readiness check of a component. Probes must not block the calling
+ * thread, blocking checks can be adapted with {@link ReadinessScheduler#blocking}.
+ */
+@FunctionalInterface
+public interface Probe {
+
+    /**
+     * Starts an attempt. The returned future completes with true if the component is ready
+     * and should complete within the given timeout, it is considered failed otherwise.
+     */
+    CompletableFuture<Boolean> attempt(final Duration timeout);
+}
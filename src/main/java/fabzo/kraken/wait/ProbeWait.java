@@ -0,0 +1,74 @@
+package fabzo.kraken.wait;
+
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.InfrastructureComponent;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Base of waits that repeatedly probe a component until it is ready. Attempts are
+ * scheduled by the {@link ReadinessScheduler} of the environment.
+ */
+@Slf4j
+public abstract class ProbeWait implements Wait {
+    private final Duration atMost;
+    private RetryPolicy retryPolicy = RetryPolicy.create();
+
+    protected ProbeWait(final Duration atMost) {
+        this.atMost = atMost;
+    }
+
+    /**
+     * Timing of the attempts of this wait.
+     * <br>
+     * Default: {@link RetryPolicy#create()}
+     */
+    public ProbeWait withRetryPolicy(final RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+        return this;
+    }
+
+    public Duration atMost() {
+        return atMost;
+    }
+
+    public RetryPolicy retryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * Creates the probe for the component once it has been started.
+     *
+     * @throws IllegalStateException if the component can not be probed, e.g. a port is missing
+     */
+    protected abstract Probe probe(final EnvironmentContext ctx, final InfrastructureComponent component);
+
+    @Override
+    public CompletableFuture<Boolean> executeAsync(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        final Probe probe;
+        try {
+            probe = probe(ctx, component);
+        } catch (final IllegalStateException e) {
+            log.warn(e.getMessage());
+            return CompletableFuture.completedFuture(false);
+        }
+
+        // The polling future is returned as is, so that cancelling it stops further attempts
+        val remaining = ctx.remaining(atMost);
+        val ready = ctx.readiness().poll(probe, retryPolicy, remaining);
+        ready.thenAccept(isReady -> {
+            if (!isReady) {
+                log.warn("{} did not become ready within {}", component.name(), remaining);
+            }
+        });
+        return ready;
+    }
+
+    @Override
+    public boolean execute(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        return Wait.await(executeAsync(ctx, component));
+    }
+}
@@ -0,0 +1,93 @@
+package fabzo.kraken.wait;
+
+import com.google.common.base.MoreObjects;
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.InfrastructureComponent;
+import io.vavr.control.Option;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Waits for a service by speaking the first step of its wire protocol on a raw
+ * connection. No driver is needed and a single round trip tells whether the service
+ * is ready, not just whether a port accepts connections.
+ */
+@Slf4j
+public class ProtocolWait extends ProbeWait {
+    private final String protocol;
+    private final String portName;
+    private final Supplier<Handshake> handshake;
+
+    /**
+     * Waits for the initial handshake packet of a MySQL or MariaDB server.
+     */
+    public static ProtocolWait mysql(final String portName, final Duration atMost) {
+        return new ProtocolWait("mysql", portName, Handshakes::mysql, atMost);
+    }
+
+    /**
+     * Waits for a Postgres server to accept a startup message of the postgres user.
+     */
+    public static ProtocolWait postgres(final String portName, final Duration atMost) {
+        return postgres(portName, "postgres", atMost);
+    }
+
+    public static ProtocolWait postgres(final String portName, final String user, final Duration atMost) {
+        return new ProtocolWait("postgres", portName, () -> Handshakes.postgres(user), atMost);
+    }
+
+    /**
+     * Waits for a Redis server to answer PING.
+     */
+    public static ProtocolWait redis(final String portName, final Duration atMost) {
+        return new ProtocolWait("redis", portName, Handshakes::redis, atMost);
+    }
+
+    /**
+     * Waits for a Kafka broker to answer an ApiVersions request.
+     */
+    public static ProtocolWait kafka(final String portName, final Duration atMost) {
+        return new ProtocolWait("kafka", portName, Handshakes::kafka, atMost);
+    }
+
+    /**
+     * Waits for a service using a custom handshake.
+     */
+    public static ProtocolWait handshake(final String portName, final Supplier<Handshake> handshake, final Duration atMost) {
+        return new ProtocolWait("custom", portName, handshake, atMost);
+    }
+
+    private ProtocolWait(final String protocol, final String portName, final Supplier<Handshake> handshake, final Duration atMost) {
+        super(atMost);
+        this.protocol = protocol;
+        this.portName = portName;
+        this.handshake = handshake;
+    }
+
+    @Override
+    protected Probe probe(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        final Option<Integer> port = ctx.port(component.name(), portName);
+        if (port.isEmpty()) {
+            throw new IllegalStateException("Unable to get port " + portName + " of " + component.name());
+        }
+
+        log.debug("Waiting for {} on port {}", protocol, port.get());
+        val address = new InetSocketAddress(ctx.ip(component.name()), port.get());
+        val tcp = ctx.readiness().tcp();
+
+        return timeout -> tcp.exchange(address, handshake.get());
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("protocol", protocol)
+                .add("portName", portName)
+                .add("atMost", atMost())
+                .toString();
+    }
+}
@@ -0,0 +1,235 @@
+package fabzo.kraken.wait;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClients;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the attempts of all waits of an environment on a small shared thread pool.
+ * Between two attempts a wait does not occupy any thread, so many components can
+ * wait concurrently without parking their orchestration threads.
+ */
+@Slf4j
+public class ReadinessScheduler {
+    private static final int HTTP_MAX_CONNECTIONS = 50;
+    private static final int HTTP_MAX_CONNECTIONS_PER_ROUTE = 2;
+
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService blockingExecutor;
+    private final TcpProber tcpProber = new TcpProber();
+    private final Set<CompletableFuture<?>> outstanding = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private CloseableHttpClient httpClient;
+
+    public ReadinessScheduler(final int threads) {
+        this.scheduler = Executors.newScheduledThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat("kraken-readiness-%d")
+                .setDaemon(true)
+                .build());
+        this.blockingExecutor = Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat("kraken-wait-%d")
+                .setDaemon(true)
+                .build());
+    }
+
+    /**
+     * Runs attempts of the probe until one succeeds or the time is up.
+     *
+     * @return Future completing with true once an attempt succeeded or false if no attempt
+     * succeeded within the given time. Cancelling the future stops further attempts and
+     * cancels the attempt in progress.
+     */
+    public CompletableFuture<Boolean> poll(final Probe probe, final RetryPolicy policy, final Duration atMost) {
+        val result = track(new CompletableFuture<Boolean>());
+        val deadline = System.nanoTime() + atMost.toNanos();
+        val current = new AtomicReference<CompletableFuture<Boolean>>();
+        result.whenComplete((ready, error) -> Option.of(current.get()).forEach(attempt -> attempt.cancel(true)));
+
+        schedule(() -> attempt(probe, policy, deadline, 0, result, current), policy.initialDelay());
+        return result;
+    }
+
+    private void attempt(final Probe probe, final RetryPolicy policy, final long deadline, final int attempt,
+                         final CompletableFuture<Boolean> result, final AtomicReference<CompletableFuture<Boolean>> current) {
+        if (result.isDone()) {
+            return;
+        }
+
+        CompletableFuture<Boolean> started;
+        try {
+            started = probe.attempt(policy.attemptTimeout());
+        } catch (final Exception e) {
+            started = CompletableFuture.completedFuture(false);
+        }
+
+        val attemptFuture = started;
+        current.set(attemptFuture);
+        if (result.isDone()) {
+            // Cancelled while the attempt was being started
+            attemptFuture.cancel(true);
+            return;
+        }
+        val timeout = scheduler.schedule(() -> attemptFuture.complete(false),
+                policy.attemptTimeout().toNanos(), TimeUnit.NANOSECONDS);
+
+        attemptFuture.whenComplete((ready, error) -> {
+            timeout.cancel(false);
+            if (result.isDone()) {
+                return;
+            }
+            if (error == null && Boolean.TRUE.equals(ready)) {
+                result.complete(true);
+                return;
+            }
+
+            log.debug(" -> Attempt ({}) failed", attempt + 1);
+            // The last attempt is made right at the deadline
+            val remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                result.complete(false);
+                return;
+            }
+            val interval = Math.min(policy.interval(attempt).toNanos(), remaining);
+            schedule(() -> attempt(probe, policy, deadline, attempt + 1, result, current), Duration.ofNanos(interval));
+        });
+    }
+
+    private <T> CompletableFuture<T> track(final CompletableFuture<T> future) {
+        outstanding.add(future);
+        future.whenComplete((ignored, error) -> outstanding.remove(future));
+        return future;
+    }
+
+    /**
+     * Cancels everything that is currently being waited for, e.g. because the startup
+     * of another component failed.
+     */
+    public void cancelAll() {
+        outstanding.forEach(future -> future.cancel(false));
+    }
+
+    private void schedule(final Runnable task, final Duration delay) {
+        scheduler.schedule(task, delay.toNanos(), TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Adapts a blocking check to a probe. Attempts are executed on a separate pool so that
+     * they do not hold up the scheduler. The check is given the attempt timeout and is
+     * considered failed if it throws.
+     */
+    public Probe blocking(final BlockingCheck check) {
+        return timeout -> CompletableFuture.supplyAsync(() -> {
+            try {
+                return check.test(timeout);
+            } catch (final Exception e) {
+                log.debug(" -> Attempt failed due to {}[{}]", e.getClass().getSimpleName(), e.getMessage());
+                return false;
+            }
+        }, blockingExecutor);
+    }
+
+    /**
+     * Fails the returned future with a {@link TimeoutException} if the given future does not
+     * complete in time.
+     */
+    public <T> CompletableFuture<T> within(final CompletableFuture<T> future, final Duration atMost) {
+        val result = track(new CompletableFuture<T>());
+        val timeout = scheduler.schedule(() -> result.completeExceptionally(new TimeoutException()),
+                atMost.toNanos(), TimeUnit.NANOSECONDS);
+
+        future.whenComplete((value, error) -> {
+            timeout.cancel(false);
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(value);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Completes after the given time without occupying a thread in the meantime.
+     */
+    public CompletableFuture<Void> delay(final Duration duration) {
+        val result = track(new CompletableFuture<Void>());
+        schedule(() -> result.complete(null), duration);
+        return result;
+    }
+
+    /**
+     * Prober connecting to TCP ports without blocking.
+     */
+    public TcpProber tcp() {
+        return tcpProber;
+    }
+
+    /**
+     * Pooled keep-alive HTTP client shared by all HTTP waits, closed with the scheduler.
+     */
+    public synchronized CloseableHttpClient http() {
+        if (httpClient == null) {
+            val connectionManager = new PoolingHttpClientConnectionManager();
+            connectionManager.setMaxTotal(HTTP_MAX_CONNECTIONS);
+            connectionManager.setDefaultMaxPerRoute(HTTP_MAX_CONNECTIONS_PER_ROUTE);
+
+            httpClient = HttpClients.custom()
+                    .setConnectionManager(connectionManager)
+                    .disableAutomaticRetries()
+                    .build();
+        }
+        return httpClient;
+    }
+
+    /**
+     * Executor for waits that can only be executed blocking.
+     */
+    public ExecutorService blockingExecutor() {
+        return blockingExecutor;
+    }
+
+    /**
+     * Readiness check that blocks until it knows the result.
+     */
+    @FunctionalInterface
+    public interface BlockingCheck {
+        boolean test(final Duration timeout) throws Exception;
+    }
+
+    /**
+     * Stops all outstanding waits and releases the threads and connections. Closing
+     * more than once has no effect.
+     */
+    public void close() {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+
+        cancelAll();
+        scheduler.shutdownNow();
+        blockingExecutor.shutdownNow();
+        tcpProber.close();
+        synchronized (this) {
+            if (httpClient != null) {
+                Try.run(httpClient::close);
+            }
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fabzo.kraken.wait;
+
+import com.google.common.base.MoreObjects;
+
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Timing of the attempts of a probing wait. The interval between two attempts grows
+ * exponentially up to a maximum, every interval is randomized by the jitter so that
+ * components started together do not probe in lockstep.
+ */
+public class RetryPolicy {
+    private Duration initialDelay = Duration.ZERO;
+    private Duration initialInterval = Duration.ofMillis(100);
+    private Duration maxInterval = Duration.ofSeconds(2);
+    private double multiplier = 2.0;
+    private double jitter = 0.2;
+    private Duration attemptTimeout = Duration.ofSeconds(2);
+
+    public static RetryPolicy create() {
+        return new RetryPolicy();
+    }
+
+    /**
+     * Time before the first attempt.
+     * <br>
+     * Default: 0
+     */
+    public RetryPolicy withInitialDelay(final Duration initialDelay) {
+        this.initialDelay = initialDelay;
+        return this;
+    }
+
+    /**
+     * Time between the first and second attempt.
+     * <br>
+     * Default: 100 milliseconds
+     */
+    public RetryPolicy withInitialInterval(final Duration initialInterval) {
+        this.initialInterval = initialInterval;
+        return this;
+    }
+
+    /**
+     * Upper bound of the time between two attempts.
+     * <br>
+     * Default: 2 seconds
+     */
+    public RetryPolicy withMaxInterval(final Duration maxInterval) {
+        this.maxInterval = maxInterval;
+        return this;
+    }
+
+    /**
+     * Factor the interval grows by after every failed attempt.
+     * <br>
+     * Default: 2.0
+     */
+    public RetryPolicy withMultiplier(final double multiplier) {
+        if (multiplier < 1.0) {
+            throw new IllegalArgumentException("Multiplier must be at least 1.0");
+        }
+        this.multiplier = multiplier;
+        return this;
+    }
+
+    /**
+     * Fraction by which every interval is randomly shortened or extended.
+     * <br>
+     * Default: 0.2
+     */
+    public RetryPolicy withJitter(final double jitter) {
+        if (jitter < 0.0 || jitter > 1.0) {
+            throw new IllegalArgumentException("Jitter must be between 0.0 and 1.0");
+        }
+        this.jitter = jitter;
+        return this;
+    }
+
+    /**
+     * Time a single attempt may take before it is considered failed.
+     * <br>
+     * Default: 2 seconds
+     */
+    public RetryPolicy withAttemptTimeout(final Duration attemptTimeout) {
+        this.attemptTimeout = attemptTimeout;
+        return this;
+    }
+
+    public Duration initialDelay() {
+        return initialDelay;
+    }
+
+    public Duration initialInterval() {
+        return initialInterval;
+    }
+
+    public Duration maxInterval() {
+        return maxInterval;
+    }
+
+    public double multiplier() {
+        return multiplier;
+    }
+
+    public double jitter() {
+        return jitter;
+    }
+
+    public Duration attemptTimeout() {
+        return attemptTimeout;
+    }
+
+    /**
+     * Time to wait after the given (zero based) failed attempt. Jitter never extends an
+     * interval beyond the maximum.
+     */
+    public Duration interval(final int attempt) {
+        final double interval = Math.min(
+                initialInterval.toNanos() * Math.pow(multiplier, attempt),
+                maxInterval.toNanos());
+        final double factor = 1.0 - jitter + 2.0 * jitter * ThreadLocalRandom.current().nextDouble();
+
+        return Duration.ofNanos((long) Math.min(interval * factor, maxInterval.toNanos()));
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("initialDelay", initialDelay)
+                .add("initialInterval", initialInterval)
+                .add("maxInterval", maxInterval)
+                .add("multiplier", multiplier)
+                .add("jitter", jitter)
+                .add("attemptTimeout", attemptTimeout)
+                .toString();
+    }
+}
@@ -1,67 +1,71 @@
 package fabzo.kraken.wait;
 
 import com.google.common.base.MoreObjects;
-import com.jayway.awaitility.Duration;
 import fabzo.kraken.EnvironmentContext;
 import fabzo.kraken.components.InfrastructureComponent;
 import io.vavr.control.Option;
-import io.vavr.control.Try;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 
-import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.net.Socket;
-
-import static com.jayway.awaitility.Awaitility.await;
+import java.time.Duration;
 
 @Slf4j
-public class TCPWait implements Wait {
+public class TCPWait extends ProbeWait {
     private final String portName;
-    private final Duration atMost;
+    private boolean awaitGreeting = false;
+
+    public static TCPWait on(final String portName, final com.jayway.awaitility.Duration atMost) {
+        return new TCPWait(portName, Duration.ofMillis(atMost.getValueInMS()));
+    }
 
     public static TCPWait on(final String portName, final Duration atMost) {
         return new TCPWait(portName, atMost);
     }
 
     private TCPWait(final String portName, final Duration atMost) {
+        super(atMost);
         this.portName = portName;
-        this.atMost = atMost;
+    }
+
+    /**
+     * Requires the server to send at least one byte after accepting the connection, e.g. the
+     * handshake of a database. Docker's userland proxy accepts connections before the service
+     * inside the container listens, so a successful connect alone can be premature.
+     */
+    public TCPWait withGreeting() {
+        this.awaitGreeting = true;
+        return this;
+    }
+
+    public String portName() {
+        return portName;
     }
 
     @Override
-    public boolean execute(final EnvironmentContext ctx, final InfrastructureComponent component) {
+    protected Probe probe(final EnvironmentContext ctx, final InfrastructureComponent component) {
         final Option<Integer> port = ctx.port(component.name(), portName);
 
         if (port.isEmpty()) {
-            log.warn("Unable to get port {} of {}", portName, component.name());
-            return false;
+            throw new IllegalStateException("Unable to get port " + portName + " of " + component.name());
         }
 
         log.debug("Waiting for TCP port {} being available", port.get());
-        await().atMost(atMost).until(() -> {
-            Socket socket = null;
-            try {
-                socket = new Socket();
-                socket.connect(new InetSocketAddress(ctx.ip(component.name()), port.get()), 2000);
-                socket.getOutputStream();
-                return true;
-            } catch (final IOException ignored) {
-                return false;
-            } finally {
-                if (socket != null) {
-                    Try.run(socket::close);
-                }
-            }
-        });
+        val address = new InetSocketAddress(ctx.ip(component.name()), port.get());
 
-        return true;
+        val tcp = ctx.readiness().tcp();
+        if (awaitGreeting) {
+            return timeout -> tcp.exchange(address, Handshakes.greeting());
+        }
+        return timeout -> tcp.connect(address);
     }
 
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
                 .add("portName", portName)
-                .add("atMost", atMost)
+                .add("awaitGreeting", awaitGreeting)
+                .add("atMost", atMost())
                 .toString();
     }
 }
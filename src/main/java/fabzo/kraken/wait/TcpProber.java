@@ -0,0 +1,236 @@
+package fabzo.kraken.wait;
+
+import io.vavr.control.Option;
+import io.vavr.control.Try;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Probes TCP ports with non-blocking connects. All connects are multiplexed on a single
+ * selector thread, so any number of ports can be probed concurrently and a port is
+ * reported ready the moment its connect completes.
+ * <br>
+ * Docker's userland proxy accepts connections to published ports even if nothing listens
+ * inside the container yet. Services can therefore be probed with a {@link Handshake}
+ * instead of just the connect, e.g. by waiting for the first byte of a database greeting.
+ */
+@Slf4j
+public class TcpProber {
+    private static final int MAX_RESPONSE_SIZE = 1024;
+
+    private final Queue<Attempt> pending = new ConcurrentLinkedQueue<>();
+    private final Selector selector;
+
+    private volatile boolean running = true;
+    private Thread thread;
+
+    public TcpProber() {
+        try {
+            this.selector = Selector.open();
+        } catch (final IOException e) {
+            throw new UncheckedIOException("Failed to open selector", e);
+        }
+    }
+
+    /**
+     * Connects to the address without blocking.
+     *
+     * @return Future completing with true once connected, false if the connect failed.
+     * Completing the future from the outside, e.g. on a timeout, closes the connection.
+     */
+    public CompletableFuture<Boolean> connect(final InetSocketAddress address) {
+        return probe(address, Option.none());
+    }
+
+    /**
+     * Connects to the address and executes the handshake without blocking.
+     *
+     * @return Future completing with the result of the handshake, false if the connect failed
+     * or the connection has been closed by the server before the handshake completed.
+     * Completing the future from the outside, e.g. on a timeout, closes the connection.
+     */
+    public CompletableFuture<Boolean> exchange(final InetSocketAddress address, final Handshake handshake) {
+        return probe(address, Option.of(handshake));
+    }
+
+    private CompletableFuture<Boolean> probe(final InetSocketAddress address, final Option<Handshake> handshake) {
+        val result = new CompletableFuture<Boolean>();
+        if (!running) {
+            result.complete(false);
+            return result;
+        }
+
+        try {
+            val channel = SocketChannel.open();
+            result.whenComplete((ready, error) -> Try.run(channel::close));
+
+            channel.configureBlocking(false);
+            val connected = channel.connect(address);
+            pending.add(new Attempt(channel, handshake, connected, result));
+        } catch (final IOException e) {
+            result.complete(false);
+            return result;
+        }
+
+        ensureThread();
+        selector.wakeup();
+        return result;
+    }
+
+    private synchronized void ensureThread() {
+        if (thread == null && running) {
+            thread = new Thread(this::run, "kraken-tcp-prober");
+            thread.setDaemon(true);
+            thread.start();
+        }
+    }
+
+    private void run() {
+        while (running) {
+            try {
+                selector.select();
+            } catch (final IOException e) {
+                log.warn("TCP prober failed: {}", e.getMessage());
+                break;
+            }
+
+            registerPending();
+
+            val keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                val key = keys.next();
+                keys.remove();
+                handle(key, (Attempt) key.attachment());
+            }
+        }
+
+        Attempt attempt;
+        while ((attempt = pending.poll()) != null) {
+            attempt.result.complete(false);
+        }
+        selector.keys().forEach(key -> ((Attempt) key.attachment()).result.complete(false));
+        Try.run(selector::close);
+    }
+
+    private void registerPending() {
+        Attempt attempt;
+        while ((attempt = pending.poll()) != null) {
+            if (attempt.result.isDone()) {
+                continue;
+            }
+
+            try {
+                if (attempt.connected) {
+                    connected(attempt, null);
+                } else {
+                    attempt.channel.register(selector, SelectionKey.OP_CONNECT, attempt);
+                }
+            } catch (final IOException e) {
+                attempt.result.complete(false);
+            } catch (final RuntimeException e) {
+                attempt.result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private void handle(final SelectionKey key, final Attempt attempt) {
+        if (attempt.result.isDone()) {
+            key.cancel();
+            return;
+        }
+
+        try {
+            if (key.isConnectable()) {
+                if (attempt.channel.finishConnect()) {
+                    connected(attempt, key);
+                }
+            } else if (key.isWritable()) {
+                attempt.channel.write(attempt.request);
+                if (!attempt.request.hasRemaining()) {
+                    key.interestOps(SelectionKey.OP_READ);
+                }
+            } else if (key.isReadable()) {
+                read(attempt);
+            }
+        } catch (final CancelledKeyException e) {
+            // Attempt completed from the outside
+            attempt.result.complete(false);
+        } catch (final IOException e) {
+            attempt.result.complete(false);
+        } catch (final RuntimeException e) {
+            // A failing handshake only fails its own attempt, not the selector thread
+            attempt.result.completeExceptionally(e);
+        }
+    }
+
+    private void read(final Attempt attempt) throws IOException {
+        val read = attempt.channel.read(attempt.response);
+        if (read < 0) {
+            attempt.result.complete(false);
+            return;
+        }
+
+        val received = attempt.response.duplicate();
+        received.flip();
+        val decision = attempt.handshake.get().response(received);
+        if (decision.isDefined()) {
+            attempt.result.complete(decision.get());
+        } else if (!attempt.response.hasRemaining()) {
+            log.debug("No handshake decision within {} bytes", MAX_RESPONSE_SIZE);
+            attempt.result.complete(false);
+        }
+    }
+
+    private void connected(final Attempt attempt, final SelectionKey key) {
+        if (attempt.handshake.isEmpty()) {
+            attempt.result.complete(true);
+            return;
+        }
+
+        val operation = attempt.request.hasRemaining() ? SelectionKey.OP_WRITE : SelectionKey.OP_READ;
+        try {
+            if (key == null) {
+                attempt.channel.register(selector, operation, attempt);
+            } else {
+                key.interestOps(operation);
+            }
+        } catch (final IOException e) {
+            attempt.result.complete(false);
+        }
+    }
+
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private static class Attempt {
+        private final SocketChannel channel;
+        private final Option<Handshake> handshake;
+        private final boolean connected;
+        private final CompletableFuture<Boolean> result;
+        private final ByteBuffer request;
+        private final ByteBuffer response;
+
+        Attempt(final SocketChannel channel, final Option<Handshake> handshake, final boolean connected, final CompletableFuture<Boolean> result) {
+            this.channel = channel;
+            this.handshake = handshake;
+            this.connected = connected;
+            this.result = result;
+            this.request = handshake.map(Handshake::request).getOrElse(() -> ByteBuffer.allocate(0));
+            this.response = ByteBuffer.allocate(handshake.isDefined() ? MAX_RESPONSE_SIZE : 0);
+        }
+    }
+}
@@ -4,9 +4,11 @@ import com.google.common.base.MoreObjects;
 import fabzo.kraken.EnvironmentContext;
 import fabzo.kraken.components.InfrastructureComponent;
 import lombok.extern.slf4j.Slf4j;
+import lombok.val;
 
 import java.time.Duration;
 import java.time.temporal.TemporalUnit;
+import java.util.concurrent.CompletableFuture;
 
 @Slf4j
 public class TimeWait implements Wait {
@@ -32,6 +34,18 @@ public class TimeWait implements Wait {
         return false;
     }
 
+    @Override
+    public CompletableFuture<Boolean> executeAsync(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        val remaining = ctx.remaining(duration);
+        if (remaining.compareTo(duration) < 0) {
+            log.warn("Waiting {} exceeds the remaining startup budget of {}", duration, remaining);
+            return ctx.readiness().delay(remaining).thenApply(ignored -> false);
+        }
+
+        log.info("Waiting {} for the service to become available", duration);
+        return ctx.readiness().delay(duration).thenApply(ignored -> true);
+    }
+
     @Override
     public String toString() {
         return MoreObjects.toStringHelper(this)
@@ -3,6 +3,32 @@ package fabzo.kraken.wait;
 import fabzo.kraken.EnvironmentContext;
 import fabzo.kraken.components.InfrastructureComponent;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
 public interface Wait {
     boolean execute(final EnvironmentContext ctx, final InfrastructureComponent component);
+
+    /**
+     * Non-blocking form of {@link #execute}. Waits should schedule their work on the
+     * {@link ReadinessScheduler} of the context, waits that do not implement this are
+     * executed blocking on a separate thread.
+     */
+    default CompletableFuture<Boolean> executeAsync(final EnvironmentContext ctx, final InfrastructureComponent component) {
+        return CompletableFuture.supplyAsync(() -> execute(ctx, component), ctx.readiness().blockingExecutor());
+    }
+
+    /**
+     * Blocks until the result of an asynchronously executed wait is available.
+     */
+    static boolean await(final CompletableFuture<Boolean> result) {
+        try {
+            return result.get();
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (final ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
 }
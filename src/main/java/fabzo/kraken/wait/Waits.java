@@ -0,0 +1,71 @@
+package fabzo.kraken.wait;
+
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.InfrastructureComponent;
+import io.vavr.collection.List;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Combinators running several waits of a component concurrently.
+ */
+public class Waits {
+
+    private Waits() {
+    }
+
+    /**
+     * Succeeds once all waits succeeded. Fails as soon as one of them failed, the
+     * remaining waits are cancelled.
+     */
+    public static Wait allOf(final Wait... waits) {
+        return new CompositeWait(List.of(waits), true);
+    }
+
+    /**
+     * Succeeds as soon as one of the waits succeeded, the remaining waits are cancelled.
+     * Fails once all of them failed.
+     */
+    public static Wait anyOf(final Wait... waits) {
+        return new CompositeWait(List.of(waits), false);
+    }
+
+    private static class CompositeWait implements Wait {
+        private final List<Wait> waits;
+        private final boolean all;
+
+        CompositeWait(final List<Wait> waits, final boolean all) {
+            this.waits = waits;
+            this.all = all;
+        }
+
+        @Override
+        public boolean execute(final EnvironmentContext ctx, final InfrastructureComponent component) {
+            return Wait.await(executeAsync(ctx, component));
+        }
+
+        @Override
+        public CompletableFuture<Boolean> executeAsync(final EnvironmentContext ctx, final InfrastructureComponent component) {
+            final CompletableFuture<Boolean> result = new CompletableFuture<>();
+            final List<CompletableFuture<Boolean>> running = waits.map(wait -> wait.executeAsync(ctx, component));
+
+            // Decided by the first wait that failed (all) or succeeded (any)
+            running.forEach(future -> future.whenComplete((ready, error) -> {
+                final boolean succeeded = error == null && Boolean.TRUE.equals(ready);
+                if (succeeded != all) {
+                    result.complete(succeeded);
+                }
+            }));
+            CompletableFuture.allOf(running.toJavaList().toArray(new CompletableFuture<?>[0]))
+                    .whenComplete((ignored, error) -> result.complete(all));
+
+            result.whenComplete((ignored, error) -> running.forEach(future -> future.cancel(false)));
+            return result;
+        }
+
+        @Override
+        public String toString() {
+            return (all ? "allOf" : "anyOf") + waits.mkString("[", ", ", "]");
+        }
+    }
+}
@@ -0,0 +1,172 @@
+package fabzo.kraken;
+
+import org.junit.Test;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class HostBudgetTest {
+    private static final long GB = 1024L * 1024 * 1024;
+
+    @Test
+    public void testAdmitsRightAwayWhenResourcesFit() {
+        final HostBudget budget = HostBudget.create().withCpus(4).withMemory(4 * GB);
+
+        assertTrue(budget.admit("a", 2, 2 * GB).isDone());
+        assertTrue(budget.admit("b", 2, 2 * GB).isDone());
+    }
+
+    @Test
+    public void testUnlimitedBudgetAdmitsEverything() {
+        final HostBudget budget = HostBudget.create();
+
+        assertTrue(budget.admit("a", 64, 1024 * GB).isDone());
+        assertTrue(budget.admit("b", 64, 1024 * GB).isDone());
+    }
+
+    @Test
+    public void testDemandExceedingBudgetFailsRightAway() throws Exception {
+        final HostBudget budget = HostBudget.create().withCpus(4);
+
+        final CompletableFuture<Void> admitted = budget.admit("a", 5, 0);
+
+        assertTrue(admitted.isCompletedExceptionally());
+        try {
+            admitted.get();
+            fail("Expected the demand to be rejected");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+        }
+    }
+
+    @Test
+    public void testReleaseAdmitsWaitingInOrder() {
+        final HostBudget budget = HostBudget.create().withCpus(4);
+        budget.admit("a", 4, 0);
+
+        final CompletableFuture<Void> large = budget.admit("large", 3, 0);
+        final CompletableFuture<Void> small = budget.admit("small", 1, 0);
+        assertFalse(large.isDone());
+        assertFalse(small.isDone());
+
+        budget.release("a");
+
+        assertTrue(large.isDone());
+        assertTrue(small.isDone());
+    }
+
+    @Test
+    public void testSmallRequestDoesNotOvertakeLargeOne() {
+        final HostBudget budget = HostBudget.create().withCpus(4);
+        budget.admit("a", 2, 0);
+        budget.admit("b", 1, 0);
+
+        final CompletableFuture<Void> large = budget.admit("large", 3, 0);
+        final CompletableFuture<Void> small = budget.admit("small", 1, 0);
+
+        budget.release("b");
+
+        assertFalse(large.isDone());
+        assertFalse(small.isDone());
+
+        budget.release("a");
+
+        assertTrue(large.isDone());
+        assertTrue(small.isDone());
+    }
+
+    @Test
+    public void testReleaseWithdrawsPendingRequest() {
+        final HostBudget budget = HostBudget.create().withMemory(4 * GB);
+        budget.admit("a", 0, 4 * GB);
+        final CompletableFuture<Void> pending = budget.admit("b", 0, 4 * GB);
+        final CompletableFuture<Void> next = budget.admit("c", 0, 2 * GB);
+
+        budget.release("b");
+
+        assertTrue(pending.isCancelled());
+        assertFalse(next.isDone());
+
+        budget.release("a");
+
+        assertTrue(next.isDone());
+        assertTrue(budget.admit("d", 0, 2 * GB).isDone());
+    }
+
+    @Test
+    public void testReleaseOfUnknownKeyIsIgnored() {
+        final HostBudget budget = HostBudget.create().withCpus(2);
+        budget.admit("a", 2, 0);
+
+        budget.release("unknown");
+
+        assertFalse(budget.admit("b", 1, 0).isDone());
+    }
+
+    @Test
+    public void testAdmittingKeyAgainDoesNotReserveTwice() {
+        final HostBudget budget = HostBudget.create().withCpus(4);
+        assertTrue(budget.admit("a", 2, 0).isDone());
+
+        assertTrue(budget.admit("a", 2, 0).isDone());
+        assertTrue(budget.admit("b", 2, 0).isDone());
+
+        budget.release("a");
+        budget.release("b");
+        assertTrue(budget.admit("c", 4, 0).isDone());
+    }
+
+    @Test
+    public void testAdmittingPendingKeyAgainReturnsSameRequest() {
+        final HostBudget budget = HostBudget.create().withCpus(4);
+        budget.admit("a", 4, 0);
+        final CompletableFuture<Void> pending = budget.admit("b", 2, 0);
+
+        assertSame(pending, budget.admit("b", 2, 0));
+
+        budget.release("a");
+        assertTrue(pending.isDone());
+        budget.release("b");
+        assertTrue(budget.admit("c", 4, 0).isDone());
+    }
+
+    /**
+     * Two environments of 2 + 2 CPUs on a budget of 4 CPUs. Admitting their components one by
+     * one could let each hold 2 CPUs while waiting for the other, admitting them as a whole
+     * lets the first complete and the second follow once it is released.
+     */
+    @Test(timeout = 10000)
+    public void testConcurrentEnvironmentsDoNotDeadlock() throws Exception {
+        final HostBudget budget = HostBudget.create().withCpus(4);
+        final ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            final CompletableFuture<?> first = CompletableFuture.runAsync(() -> runEnvironment(budget, "first"), executor);
+            final CompletableFuture<?> second = CompletableFuture.runAsync(() -> runEnvironment(budget, "second"), executor);
+
+            CompletableFuture.allOf(first, second).get(5, TimeUnit.SECONDS);
+        } finally {
+            executor.shutdownNow();
+        }
+
+        assertTrue(budget.admit("after", 4, 0).isDone());
+    }
+
+    private static void runEnvironment(final HostBudget budget, final String name) {
+        budget.admit(name, 2 + 2, 0).join();
+        try {
+            Thread.sleep(100);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            budget.release(name);
+        }
+    }
+}
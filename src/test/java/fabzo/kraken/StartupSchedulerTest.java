@@ -0,0 +1,152 @@
+package fabzo.kraken;
+
+import fabzo.kraken.components.DockerComponent;
+import fabzo.kraken.components.InfrastructureComponent;
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class StartupSchedulerTest {
+
+    @Test
+    public void testDependentsStartAfterTheirDependencies() {
+        final java.util.List<String> events = new CopyOnWriteArrayList<>();
+        final List<InfrastructureComponent> components = List.of(
+                component("third").dependsOn("second"),
+                component("second").dependsOn("first"),
+                component("first"));
+
+        scheduler(components, 3).run((component, executor) -> CompletableFuture.runAsync(() -> {
+            events.add("start " + component.name());
+            sleep(50);
+            events.add("ready " + component.name());
+        }, executor));
+
+        assertEquals(java.util.Arrays.asList(
+                "start first", "ready first",
+                "start second", "ready second",
+                "start third", "ready third"), events);
+    }
+
+    @Test
+    public void testIndependentComponentsOverlap() {
+        final AtomicInteger starting = new AtomicInteger();
+        final CompletableFuture<Void> allStarting = new CompletableFuture<>();
+        final List<InfrastructureComponent> components = List.of(component("first"), component("second"), component("third"));
+
+        // Every component only becomes ready once all of them are starting at the same time
+        scheduler(components, 3).run((component, executor) -> {
+            if (starting.incrementAndGet() == components.size()) {
+                allStarting.complete(null);
+            }
+            return allStarting;
+        });
+
+        assertEquals(3, starting.get());
+    }
+
+    @Test
+    public void testParallelismLimitsComponentsInFlight() {
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxInFlight = new AtomicInteger();
+        final List<InfrastructureComponent> components = List.range(0, 6).map(i -> component("component" + i));
+
+        // Starters return right away and complete later, like the asynchronous handlers do
+        scheduler(components, 2).run((component, executor) -> {
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.runAsync(() -> {
+                sleep(50);
+                inFlight.decrementAndGet();
+            });
+        });
+
+        assertEquals(2, maxInFlight.get());
+        assertEquals(0, inFlight.get());
+    }
+
+    @Test
+    public void testParallelismOfOneKeepsRegistrationOrder() {
+        final java.util.List<String> started = new CopyOnWriteArrayList<>();
+        final List<InfrastructureComponent> components = List.of(component("first"), component("second"), component("third"));
+
+        scheduler(components, 1).run((component, executor) -> CompletableFuture.runAsync(() -> started.add(component.name()), executor));
+
+        assertEquals(java.util.Arrays.asList("first", "second", "third"), started);
+    }
+
+    @Test
+    public void testCyclicDependencyIsRejected() {
+        final List<InfrastructureComponent> components = List.of(
+                component("first").dependsOn("second"),
+                component("second").dependsOn("first"));
+
+        assertRejected(components, "Cyclic dependency between components");
+    }
+
+    @Test
+    public void testUnknownDependencyIsRejected() {
+        final List<InfrastructureComponent> components = List.of(component("first").dependsOn("missing"));
+
+        assertRejected(components, "Component first depends on missing which is not registered");
+    }
+
+    @Test
+    public void testFailureIsPropagated() {
+        final List<InfrastructureComponent> components = List.of(component("first"), component("second").dependsOn("first"));
+        final java.util.List<String> started = new CopyOnWriteArrayList<>();
+
+        try {
+            scheduler(components, 2).run((component, executor) -> {
+                started.add(component.name());
+                final CompletableFuture<Void> failed = new CompletableFuture<>();
+                failed.completeExceptionally(new IllegalStateException("Failed to start " + component.name()));
+                return failed;
+            });
+            fail("Expected the failure of first to be propagated");
+        } catch (final IllegalStateException e) {
+            assertEquals("Failed to start first", e.getMessage());
+        }
+        assertEquals(java.util.Collections.singletonList("first"), started);
+    }
+
+    private void assertRejected(final List<InfrastructureComponent> components, final String message) {
+        final AtomicInteger started = new AtomicInteger();
+        try {
+            scheduler(components, 2).run((component, executor) -> {
+                started.incrementAndGet();
+                return CompletableFuture.completedFuture(null);
+            });
+            fail("Expected the components to be rejected");
+        } catch (final IllegalStateException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(message));
+        }
+        assertEquals(0, started.get());
+    }
+
+    private static StartupScheduler scheduler(final List<InfrastructureComponent> components, final int parallelism) {
+        return new StartupScheduler(components, parallelism, Option.of(Duration.ofSeconds(10)));
+    }
+
+    private static DockerComponent component(final String name) {
+        return DockerComponent.create()
+                .withName(name)
+                .withImage("alpine", "latest");
+    }
+
+    private static void sleep(final long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
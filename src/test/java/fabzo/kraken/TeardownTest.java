@@ -0,0 +1,62 @@
+package fabzo.kraken;
+
+import io.vavr.collection.List;
+import io.vavr.control.Option;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class TeardownTest {
+
+    @Test
+    public void testRunsStagesOfAllTasks() {
+        final AtomicInteger stages = new AtomicInteger();
+        final Function<Executor, CompletableFuture<?>> task = executor -> CompletableFuture
+                .runAsync(stages::incrementAndGet, executor)
+                .thenRunAsync(stages::incrementAndGet, executor);
+
+        final int failed = new Teardown(2, Option.none()).runAsync(List.of(task, task, task));
+
+        assertEquals(0, failed);
+        assertEquals(6, stages.get());
+    }
+
+    @Test
+    public void testCountsFailedTasks() {
+        final Function<Executor, CompletableFuture<?>> succeeding = executor -> CompletableFuture.runAsync(() -> { }, executor);
+        final Function<Executor, CompletableFuture<?>> failing = executor -> CompletableFuture.runAsync(() -> {
+            throw new IllegalStateException("stop failed");
+        }, executor);
+        final Function<Executor, CompletableFuture<?>> throwing = executor -> {
+            throw new IllegalStateException("stop failed");
+        };
+
+        assertEquals(2, new Teardown(2, Option.none()).runAsync(List.of(succeeding, failing, throwing)));
+    }
+
+    @Test(timeout = 5000)
+    public void testCancelsTasksAtTheDeadline() throws Exception {
+        final CountDownLatch interrupted = new CountDownLatch(1);
+        final Runnable hanging = () -> {
+            try {
+                Thread.sleep(TimeUnit.MINUTES.toMillis(1));
+            } catch (final InterruptedException e) {
+                interrupted.countDown();
+            }
+        };
+
+        final int failed = new Teardown(2, Option.of(Duration.ofMillis(200))).run(List.of(hanging, () -> { }));
+
+        assertEquals(1, failed);
+        assertTrue(interrupted.await(2, TimeUnit.SECONDS));
+    }
+}
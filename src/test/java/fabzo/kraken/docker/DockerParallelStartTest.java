@@ -0,0 +1,159 @@
+package fabzo.kraken.docker;
+
+import fabzo.kraken.AbstractDockerTest;
+import fabzo.kraken.Environment;
+import fabzo.kraken.EnvironmentConfiguration;
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.EnvironmentModule;
+import fabzo.kraken.Kraken;
+import fabzo.kraken.components.ComponentState;
+import fabzo.kraken.components.DockerComponent;
+import fabzo.kraken.components.InfrastructureComponent;
+import fabzo.kraken.handler.LifecycleStages;
+import fabzo.kraken.handler.docker.DockerConfiguration;
+import fabzo.kraken.handler.docker.DockerLifecycleHandler;
+import fabzo.kraken.wait.TimeWait;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class DockerParallelStartTest extends AbstractDockerTest {
+
+    @Test
+    public void testParallelStartup() {
+        final DockerComponent first = DockerComponent.create()
+                .withName("first")
+                .withImage("alpine", "latest");
+        first.withWait(new TimeWait(Duration.ofSeconds(2)));
+
+        final DockerComponent second = DockerComponent.create()
+                .withName("second")
+                .withImage("alpine", "latest");
+        second.withWait(new TimeWait(Duration.ofSeconds(2)));
+
+        final DockerComponent third = DockerComponent.create()
+                .withName("third")
+                .withImage("alpine", "latest")
+                .dependsOn("second");
+
+        final RecordingDockerLifecycleHandler handler = new RecordingDockerLifecycleHandler();
+        final Environment environment = Kraken.createEnvironment(new EnvironmentModule() {
+            @Override
+            public void configure() {
+                register(EnvironmentConfiguration.create()
+                        .withStartupParallelism(3));
+
+                register(handler);
+
+                register(first);
+                register(second);
+                register(third.withEnv("FIRST_IP", ipRef("first")));
+            }
+        });
+
+        try {
+            environment.start();
+
+            assertEquals(ComponentState.STARTED, first.state());
+            assertEquals(ComponentState.STARTED, second.state());
+            assertEquals(ComponentState.STARTED, third.state());
+
+            // third depends on second and must not be started before second is ready
+            assertTrue(handler.startedAt("third") >= handler.readyAt("second"));
+            // first and second are independent and start while the other one is waiting
+            assertTrue(handler.startedAt("first") < handler.readyAt("second"));
+            assertTrue(handler.startedAt("second") < handler.readyAt("first"));
+        } finally {
+            environment.stop();
+        }
+    }
+
+    @Test
+    public void testCyclicDependencyIsRejected() {
+        assertRejected(
+                DockerComponent.create()
+                        .withName("first")
+                        .withImage("alpine", "latest")
+                        .dependsOn("second"),
+                DockerComponent.create()
+                        .withName("second")
+                        .withImage("alpine", "latest")
+                        .dependsOn("first"));
+    }
+
+    @Test
+    public void testUnknownDependencyIsRejected() {
+        assertRejected(
+                DockerComponent.create()
+                        .withName("first")
+                        .withImage("alpine", "latest")
+                        .dependsOn("missing"));
+    }
+
+    private void assertRejected(final DockerComponent... components) {
+        final Environment environment = Kraken.createEnvironment(new EnvironmentModule() {
+            @Override
+            public void configure() {
+                register(EnvironmentConfiguration.create()
+                        .withStartupParallelism(3));
+
+                register(DockerLifecycleHandler.withConfig(
+                        DockerConfiguration.create()
+                                .withDockerSocket(DockerConfiguration.DOCKER_HOST_UNIX)));
+
+                for (final DockerComponent component : components) {
+                    register(component);
+                }
+            }
+        });
+
+        try {
+            environment.start();
+            fail("Expected the components to be rejected");
+        } catch (final IllegalStateException e) {
+            for (final DockerComponent component : components) {
+                assertEquals(ComponentState.WAITING, component.state());
+            }
+        } finally {
+            environment.stop();
+        }
+    }
+
+    /**
+     * Records when a component was handed to the handler and when it became ready.
+     */
+    private static class RecordingDockerLifecycleHandler extends DockerLifecycleHandler {
+        private final Map<String, Long> started = new ConcurrentHashMap<>();
+        private final Map<String, Long> ready = new ConcurrentHashMap<>();
+
+        RecordingDockerLifecycleHandler() {
+            super(DockerConfiguration.create()
+                    .withDockerSocket(DockerConfiguration.DOCKER_HOST_UNIX));
+        }
+
+        @Override
+        public LifecycleStages runAsync(final InfrastructureComponent component, final EnvironmentContext ctx, final Executor executor) {
+            started.put(component.name(), System.nanoTime());
+            final LifecycleStages stages = super.runAsync(component, ctx, executor);
+            return new LifecycleStages(stages.created(), stages.started(), stages.ready().thenApply(isReady -> {
+                ready.put(component.name(), System.nanoTime());
+                return isReady;
+            }));
+        }
+
+        long startedAt(final String name) {
+            return started.get(name);
+        }
+
+        long readyAt(final String name) {
+            return ready.get(name);
+        }
+    }
+}
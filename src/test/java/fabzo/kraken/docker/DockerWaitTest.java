@@ -10,8 +10,12 @@ import fabzo.kraken.handler.docker.DockerLifecycleHandler;
 import fabzo.kraken.wait.MySQLWait;
 import org.junit.Test;
 
+import javax.sql.DataSource;
+import java.sql.Connection;
 import java.time.Duration;
 
+import static org.junit.Assert.assertTrue;
+
 public class DockerWaitTest extends AbstractDockerTest {
 
     @Test
@@ -45,4 +49,36 @@ public class DockerWaitTest extends AbstractDockerTest {
             environment.stop();
         }
     }
+
+    @Test
+    public void testDatabaseWaitDataSource() throws Exception {
+        final Environment environment = Kraken.createEnvironment(new EnvironmentModule() {
+            @Override
+            public void configure() {
+                register(DockerLifecycleHandler.withConfig(
+                        DockerConfiguration.create()
+                                .withDockerSocket(DockerConfiguration.DOCKER_HOST_UNIX)));
+
+                register(DockerComponent.create()
+                        .withName("mariadb")
+                        .withImage("fabzo/mariadb-docker", "testdb")
+                        .withPortBinding("db", 3306)
+                        .withEnv("MYSQL_DATABASE", "testdb")
+                        .withEnv("MYSQL_ALLOW_EMPTY_PASSWORD", "yes")
+                        .withWait(new MySQLWait("testdb","db", Duration.ofSeconds(60)).withDataSource(2)));
+
+            }
+        });
+
+        try {
+            environment.start();
+
+            final DataSource dataSource = environment.context().dataSource("mariadb").get();
+            try (final Connection connection = dataSource.getConnection()) {
+                assertTrue(connection.isValid(1));
+            }
+        } finally {
+            environment.stop();
+        }
+    }
 }
@@ -0,0 +1,95 @@
+package fabzo.kraken.handler.docker;
+
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.DockerComponent;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+public class ConfigurationHashTest {
+    private static final String DATABASE_URL = "jdbc:mysql://${mysql.ip}:${mysql.ports.db.to}/test";
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testCheckpointHashIgnoresResolvedValues() {
+        final EnvironmentContext firstRun = new EnvironmentContext("first");
+        firstRun.setIP("mysql", "10.0.0.1");
+        firstRun.addPort("mysql", "db", 3306, 20001);
+        final EnvironmentContext secondRun = new EnvironmentContext("second");
+        secondRun.setIP("mysql", "10.0.0.2");
+        secondRun.addPort("mysql", "db", 3306, 20002);
+
+        final String checkpoint = ConfigurationHash.ofCheckpoint(service());
+
+        assertEquals(checkpoint, ConfigurationHash.ofCheckpoint(service()));
+        assertNotEquals(ConfigurationHash.of(service(), firstRun), ConfigurationHash.of(service(), secondRun));
+    }
+
+    @Test
+    public void testReuseHashChangesWithResolvedEnvironment() {
+        final EnvironmentContext ctx = new EnvironmentContext("test");
+        ctx.setIP("mysql", "10.0.0.1");
+        ctx.addPort("mysql", "db", 3306, 20001);
+        final String before = ConfigurationHash.of(service(), ctx);
+
+        assertEquals(before, ConfigurationHash.of(service(), ctx));
+
+        ctx.addPort("mysql", "db", 3306, 20002);
+        assertNotEquals(before, ConfigurationHash.of(service(), ctx));
+    }
+
+    @Test
+    public void testCheckpointHashChangesWithConfiguration() {
+        final String checkpoint = ConfigurationHash.ofCheckpoint(service());
+
+        assertNotEquals(checkpoint, ConfigurationHash.ofCheckpoint(service().withImage("service", "2.0")));
+        assertNotEquals(checkpoint, ConfigurationHash.ofCheckpoint(service().withEnv("MODE", "fast")));
+        assertNotEquals(checkpoint, ConfigurationHash.ofCheckpoint(DockerComponent.create()
+                .withName("service")
+                .withImage("service", "1.0")
+                .withEnv("DATABASE_URL", DATABASE_URL.replace("/test", "/other"))
+                .withCheckpoint()));
+        assertNotEquals(checkpoint, ConfigurationHash.ofCheckpoint(service().withCommand("run --verbose")));
+        assertNotEquals(checkpoint, ConfigurationHash.ofCheckpoint(service().withTmpfs("/data")));
+        assertNotEquals(checkpoint, ConfigurationHash.ofCheckpoint(service().withCheckpointInput("seed-v2")));
+    }
+
+    @Test
+    public void testCheckpointHashChangesWithFileContent() throws Exception {
+        final Path migrations = folder.newFolder("migrations").toPath();
+        final Path script = migrations.resolve("V1__init.sql");
+        Files.write(script, "create table a (id int);".getBytes(StandardCharsets.UTF_8));
+        final String before = ConfigurationHash.ofCheckpoint(service().withCheckpointInput(migrations));
+
+        assertEquals(before, ConfigurationHash.ofCheckpoint(service().withCheckpointInput(migrations)));
+
+        Files.write(script, "create table b (id int);".getBytes(StandardCharsets.UTF_8));
+        final String changed = ConfigurationHash.ofCheckpoint(service().withCheckpointInput(migrations));
+        assertNotEquals(before, changed);
+
+        Files.write(migrations.resolve("V2__more.sql"), "create table c (id int);".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(changed, ConfigurationHash.ofCheckpoint(service().withCheckpointInput(migrations)));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMissingCheckpointFilesAreRejected() {
+        ConfigurationHash.ofCheckpoint(service().withCheckpointInput(folder.getRoot().toPath().resolve("missing")));
+    }
+
+    private static DockerComponent service() {
+        return DockerComponent.create()
+                .withName("service")
+                .withImage("service", "1.0")
+                .withEnv("DATABASE_URL", DATABASE_URL)
+                .withCheckpoint();
+    }
+}
@@ -0,0 +1,29 @@
+package fabzo.kraken.handler.docker;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+
+public class DockerCommandsTest {
+
+    @Test
+    public void testStopTimeoutIsRoundedUpToWholeSeconds() {
+        assertEquals(1, DockerCommands.timeoutSeconds(Duration.ofMillis(1)));
+        assertEquals(1, DockerCommands.timeoutSeconds(Duration.ofMillis(500)));
+        assertEquals(1, DockerCommands.timeoutSeconds(Duration.ofSeconds(1)));
+        assertEquals(2, DockerCommands.timeoutSeconds(Duration.ofMillis(1001)));
+        assertEquals(10, DockerCommands.timeoutSeconds(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    public void testZeroStopTimeoutStaysZero() {
+        assertEquals(0, DockerCommands.timeoutSeconds(Duration.ZERO));
+    }
+
+    @Test
+    public void testLargeStopTimeoutIsClamped() {
+        assertEquals(Integer.MAX_VALUE, DockerCommands.timeoutSeconds(Duration.ofDays(100000)));
+    }
+}
@@ -0,0 +1,64 @@
+package fabzo.kraken.handler.docker;
+
+import fabzo.kraken.components.DockerComponent;
+import fabzo.kraken.wait.HTTPWait;
+import fabzo.kraken.wait.TCPWait;
+import fabzo.kraken.wait.TimeWait;
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+
+public class HealthChecksTest {
+    private static final Duration AT_MOST = Duration.ofSeconds(30);
+
+    @Test
+    public void testTcpWaitsCheckContainerPorts() {
+        final DockerComponent dockerC = service();
+        dockerC.withWait(TCPWait.on("db", AT_MOST));
+        dockerC.withWait(TCPWait.on("http", AT_MOST));
+
+        assertEquals("nc -z 127.0.0.1 5432 && nc -z 127.0.0.1 8080", HealthChecks.fromWaits(dockerC).command());
+    }
+
+    @Test
+    public void testHttpWaitIsRewrittenToContainerPort() {
+        final DockerComponent dockerC = service();
+        dockerC.withWait(HTTPWait.on("http://${service.ip}:${service.ports.http.from}/health?full=true", AT_MOST));
+        dockerC.withWait(HTTPWait.on("https://localhost:${service.ports.http.from}", AT_MOST));
+
+        assertEquals("wget -q -O /dev/null 'http://127.0.0.1:8080/health?full=true'"
+                        + " && wget -q -O /dev/null --no-check-certificate 'https://127.0.0.1:8080/'",
+                HealthChecks.fromWaits(dockerC).command());
+    }
+
+    @Test
+    public void testWaitsThatCannotBeTranslatedAreLeftOut() {
+        final DockerComponent dockerC = service();
+        dockerC.withWait(new TimeWait(Duration.ofSeconds(1)));
+        dockerC.withWait(HTTPWait.on("http://${other.ip}:${other.ports.http.from}/health", AT_MOST));
+        dockerC.withWait(HTTPWait.on("http://example.com/health", AT_MOST));
+        dockerC.withWait(TCPWait.on("unknown", AT_MOST));
+        dockerC.withWait(TCPWait.on("db", AT_MOST));
+
+        assertEquals("nc -z 127.0.0.1 5432", HealthChecks.fromWaits(dockerC).command());
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testFailsWithoutTranslatableWaits() {
+        final DockerComponent dockerC = service();
+        dockerC.withWait(new TimeWait(Duration.ofSeconds(1)));
+
+        HealthChecks.fromWaits(dockerC);
+    }
+
+    private static DockerComponent service() {
+        return DockerComponent.create()
+                .withName("service")
+                .withImage("service", "1.0")
+                .withPortBinding("db", 5432)
+                .withPortBinding("http", 8080)
+                .withHealthCheckFromWaits();
+    }
+}
@@ -0,0 +1,184 @@
+package fabzo.kraken.logs;
+
+import io.vavr.collection.List;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexedLogStoreTest {
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testReadsTimeRangeInclusive() throws Exception {
+        final IndexedLogStore store = new IndexedLogStore(folder.getRoot().toPath(), 32);
+        store.write(lines("mysql", 100, 200).toJavaList());
+
+        assertEquals(texts(120, 131), texts(store.read("mysql", at(120), at(130))));
+        assertEquals(texts(100, 101), texts(store.read("mysql", at(0), at(100))));
+        assertEquals(texts(199, 200), texts(store.read("mysql", at(199), at(1000))));
+        assertEquals(texts(100, 200), texts(store.read("mysql", at(0), at(1000))));
+        store.close();
+    }
+
+    @Test
+    public void testReadsNothingOutsideOfTheLog() throws Exception {
+        final IndexedLogStore store = new IndexedLogStore(folder.getRoot().toPath(), 32);
+        store.write(lines("mysql", 100, 200).toJavaList());
+
+        assertTrue(store.read("mysql", at(0), at(99)).isEmpty());
+        assertTrue(store.read("mysql", at(200), at(300)).isEmpty());
+        assertTrue(store.read("redis", at(0), at(300)).isEmpty());
+        store.close();
+    }
+
+    @Test
+    public void testKeepsComponentsApart() throws Exception {
+        final IndexedLogStore store = new IndexedLogStore(folder.getRoot().toPath(), 32);
+        store.write(lines("mysql", 100, 110).appendAll(lines("redis", 105, 115)).toJavaList());
+
+        assertEquals(texts(100, 110), texts(store.read("mysql", at(0), at(1000))));
+        assertEquals(texts(105, 115), texts(store.read("redis", at(0), at(1000))));
+        store.close();
+    }
+
+    @Test
+    public void testReadsAcrossChunks() throws Exception {
+        // Chunks hold only a few records, the large record does not fit into a single chunk
+        final IndexedLogStore store = new IndexedLogStore(folder.getRoot().toPath(), 64, 50);
+        store.write(lines("mysql", 100, 150).toJavaList());
+        final byte[] large = new byte[200];
+        Arrays.fill(large, (byte) 'x');
+        store.write(Arrays.asList(new LogLine("mysql", LogLine.Stream.STDERR, 150, large)));
+        store.write(lines("mysql", 151, 200).toJavaList());
+
+        final List<LogLine> read = store.read("mysql", at(140), at(160));
+
+        assertEquals(21, read.size());
+        assertEquals(texts(140, 150), texts(read.take(10)));
+        assertEquals(LogLine.Stream.STDERR, read.get(10).stream());
+        assertEquals(200, read.get(10).payload().length);
+        assertEquals(texts(151, 161), texts(read.drop(11)));
+        assertEquals(texts(100, 150), texts(store.read("mysql", at(0), at(149))));
+        store.close();
+    }
+
+    @Test
+    public void testAppendsToTheLogsOfEarlierRuns() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final IndexedLogStore first = new IndexedLogStore(directory, 32);
+        first.write(lines("mysql", 100, 200).toJavaList());
+        first.close();
+
+        final IndexedLogStore second = new IndexedLogStore(directory, 32);
+        assertEquals(texts(150, 161), texts(second.read("mysql", at(150), at(160))));
+
+        second.write(lines("mysql", 300, 400).toJavaList());
+        assertEquals(texts(100, 200).appendAll(texts(300, 400)), texts(second.read("mysql", at(0), at(1000))));
+        assertEquals(texts(350, 361), texts(second.read("mysql", at(350), at(360))));
+        second.close();
+    }
+
+    @Test
+    public void testLogsStayReadableAfterClose() throws Exception {
+        final IndexedLogStore store = new IndexedLogStore(folder.getRoot().toPath(), 32);
+        store.write(lines("mysql", 100, 200).toJavaList());
+        store.close();
+
+        assertEquals(texts(150, 161), texts(store.read("mysql", at(150), at(160))));
+        assertTrue(store.read("redis", at(0), at(1000)).isEmpty());
+    }
+
+    @Test
+    public void testDiscardsIncompleteRecordOfEarlierRun() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final IndexedLogStore first = new IndexedLogStore(directory, 32);
+        first.write(lines("mysql", 100, 110).toJavaList());
+        first.close();
+
+        // A record header announcing more payload than has been written
+        Files.write(directory.resolve("mysql.log"), new byte[]{0, 0, 0, 0, 0, 0, 0, 120, 0, 0, 0, 0, 50, 'x'},
+                StandardOpenOption.APPEND);
+        // An index entry that has only been written partially
+        Files.write(directory.resolve("mysql.idx"), new byte[]{0, 0, 0}, StandardOpenOption.APPEND);
+
+        final IndexedLogStore second = new IndexedLogStore(directory, 32);
+        second.write(lines("mysql", 130, 140).toJavaList());
+
+        assertEquals(texts(100, 110).appendAll(texts(130, 140)), texts(second.read("mysql", at(0), at(1000))));
+        assertEquals(0, Files.size(directory.resolve("mysql.idx")) % 16);
+        second.close();
+    }
+
+    @Test
+    public void testStoresSharingDirectoryDoNotOverwriteEachOther() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final IndexedLogStore first = new IndexedLogStore(directory, 32);
+        final IndexedLogStore second = new IndexedLogStore(directory, 32);
+
+        for (int timestamp = 100; timestamp < 200; timestamp += 10) {
+            first.write(lines("mysql", timestamp, timestamp + 10).toJavaList());
+            second.write(lines("mysql", timestamp + 1000, timestamp + 1010).toJavaList());
+        }
+
+        assertEquals(texts(100, 200), texts(first.read("mysql", at(0), at(10000))));
+        assertEquals(texts(1100, 1200), texts(second.read("mysql", at(0), at(10000))));
+        assertEquals(texts(150, 161), texts(first.read("mysql", at(150), at(160))));
+        assertEquals(texts(1150, 1161), texts(second.read("mysql", at(1150), at(1160))));
+
+        first.close();
+        second.close();
+        assertEquals(texts(100, 200), texts(first.read("mysql", at(0), at(10000))));
+        assertEquals(texts(1100, 1200), texts(second.read("mysql", at(0), at(10000))));
+    }
+
+    @Test
+    public void testReadingDoesNotModifyFilesOfAnotherStore() throws Exception {
+        final Path directory = folder.getRoot().toPath();
+        final IndexedLogStore writer = new IndexedLogStore(directory, 32);
+        writer.write(lines("mysql", 100, 110).toJavaList());
+
+        // A record the writer has only written partially so far
+        Files.write(directory.resolve("mysql.log"), new byte[]{0, 0, 0, 0, 0, 0, 0, 120, 0, 0, 0, 0, 50, 'x'},
+                StandardOpenOption.APPEND);
+        final long logSize = Files.size(directory.resolve("mysql.log"));
+        final long indexSize = Files.size(directory.resolve("mysql.idx"));
+
+        final IndexedLogStore reader = new IndexedLogStore(directory, 32);
+        assertEquals(texts(100, 110), texts(reader.read("mysql", at(0), at(1000))));
+        reader.close();
+        assertEquals(texts(100, 110), texts(reader.read("mysql", at(0), at(1000))));
+
+        assertEquals(logSize, Files.size(directory.resolve("mysql.log")));
+        assertEquals(indexSize, Files.size(directory.resolve("mysql.idx")));
+        writer.close();
+    }
+
+    private static List<LogLine> lines(final String component, final int from, final int to) {
+        return List.range(from, to).map(timestamp -> new LogLine(component, LogLine.Stream.STDOUT, timestamp,
+                (timestamp + "\n").getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static Instant at(final long timestamp) {
+        return Instant.ofEpochMilli(timestamp);
+    }
+
+    private static List<String> texts(final int from, final int to) {
+        return List.range(from, to).map(String::valueOf);
+    }
+
+    private static List<String> texts(final List<LogLine> lines) {
+        return lines.map(LogLine::text);
+    }
+}
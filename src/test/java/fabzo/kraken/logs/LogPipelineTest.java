@@ -0,0 +1,96 @@
+package fabzo.kraken.logs;
+
+import io.vavr.collection.List;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogPipelineTest {
+
+    @Test
+    public void testStoresReceiveLinesOfAllComponents() {
+        final TailLogSink sink = new TailLogSink(10);
+        final TailLogSink store = new TailLogSink(10);
+        final LogPipeline pipeline = new LogPipeline(List.of(sink), List.of(store), 16, OverflowStrategy.BLOCK);
+
+        pipeline.channel("followed").offer(line("followed", "hello"));
+        pipeline.storeChannel("stored").offer(line("stored", "world"));
+        pipeline.close();
+
+        assertEquals(List.of("hello"), sink.tail("followed").map(LogLine::text));
+        assertTrue(sink.tail("stored").isEmpty());
+        assertEquals(List.of("hello"), store.tail("followed").map(LogLine::text));
+        assertEquals(List.of("world"), store.tail("stored").map(LogLine::text));
+    }
+
+    @Test
+    public void testCloseIsIdempotent() {
+        final AtomicInteger closed = new AtomicInteger();
+        final LogPipeline pipeline = new LogPipeline(List.of(new LogSink() {
+            @Override
+            public void write(final java.util.List<LogLine> lines) {
+            }
+
+            @Override
+            public void close() {
+                closed.incrementAndGet();
+            }
+        }), 16, OverflowStrategy.BLOCK);
+
+        pipeline.channel("component").offer(line("component", "hello"));
+        pipeline.close();
+        pipeline.close();
+
+        assertEquals(1, closed.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseReleasesProducerBlockedOnFullBuffer() throws Exception {
+        final CountDownLatch sinkReleased = new CountDownLatch(1);
+        final LogPipeline pipeline = new LogPipeline(List.of(new LogSink() {
+            @Override
+            public void write(final java.util.List<LogLine> lines) {
+                // A sink that does not keep up with the container
+                try {
+                    sinkReleased.await();
+                } catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            @Override
+            public void close() {
+            }
+        }), 2, OverflowStrategy.BLOCK);
+
+        final LogRingBuffer channel = pipeline.channel("component");
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < 100; i++) {
+                channel.offer(line("component", "line " + i));
+            }
+        });
+        producer.start();
+        producer.join(200);
+        assertTrue("Producer should block on the full buffer", producer.isAlive());
+
+        final Thread closing = new Thread(pipeline::close);
+        closing.start();
+        producer.join(TimeUnit.SECONDS.toMillis(5));
+        assertFalse("Closing must release the producer", producer.isAlive());
+
+        sinkReleased.countDown();
+        closing.join();
+        channel.offer(line("component", "after close"));
+    }
+
+    private static LogLine line(final String component, final String text) {
+        return new LogLine(component, LogLine.Stream.STDOUT, System.currentTimeMillis(), text.getBytes(StandardCharsets.UTF_8));
+    }
+}
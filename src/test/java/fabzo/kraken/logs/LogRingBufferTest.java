@@ -0,0 +1,159 @@
+package fabzo.kraken.logs;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class LogRingBufferTest {
+
+    @Test
+    public void testCapacityIsRoundedUpToPowerOfTwo() {
+        assertEquals(1, new LogRingBuffer(1, OverflowStrategy.BLOCK).capacity());
+        assertEquals(8, new LogRingBuffer(5, OverflowStrategy.BLOCK).capacity());
+        assertEquals(16, new LogRingBuffer(16, OverflowStrategy.BLOCK).capacity());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testZeroCapacityIsRejected() {
+        new LogRingBuffer(0, OverflowStrategy.BLOCK);
+    }
+
+    @Test
+    public void testDrainKeepsOrderAndRespectsMax() {
+        final LogRingBuffer buffer = new LogRingBuffer(8, OverflowStrategy.BLOCK);
+        for (int i = 0; i < 5; i++) {
+            buffer.offer(line(i));
+        }
+
+        final List<LogLine> drained = new ArrayList<>();
+        assertEquals(3, buffer.drainTo(drained, 3));
+        assertFalse(buffer.isEmpty());
+        assertEquals(2, buffer.drainTo(drained, 10));
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.drainTo(drained, 10));
+
+        assertEquals(texts(0, 5), texts(drained));
+    }
+
+    @Test
+    public void testDropOldestKeepsNewestLines() {
+        final LogRingBuffer buffer = new LogRingBuffer(4, OverflowStrategy.DROP_OLDEST);
+        for (int i = 0; i < 10; i++) {
+            buffer.offer(line(i));
+        }
+
+        final List<LogLine> drained = new ArrayList<>();
+        buffer.drainTo(drained, 10);
+
+        assertEquals(texts(6, 10), texts(drained));
+        assertEquals(6, buffer.takeDropped());
+        assertEquals(0, buffer.takeDropped());
+    }
+
+    @Test
+    public void testBlockWaitsForTheConsumerWithoutLosingLines() throws Exception {
+        final LogRingBuffer buffer = new LogRingBuffer(4, OverflowStrategy.BLOCK);
+        final int lines = 10000;
+
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < lines; i++) {
+                buffer.offer(line(i));
+            }
+        });
+        producer.start();
+
+        final List<LogLine> drained = new ArrayList<>();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (drained.size() < lines && System.nanoTime() < deadline) {
+            buffer.drainTo(drained, 3);
+        }
+        producer.join(TimeUnit.SECONDS.toMillis(1));
+
+        assertEquals(texts(0, lines), texts(drained));
+        assertEquals(0, buffer.takeDropped());
+    }
+
+    @Test
+    public void testConcurrentDropOldestDrainsOrDropsEveryLineOnce() throws Exception {
+        final LogRingBuffer buffer = new LogRingBuffer(16, OverflowStrategy.DROP_OLDEST);
+        final int lines = 100000;
+
+        final Thread producer = new Thread(() -> {
+            for (int i = 0; i < lines; i++) {
+                buffer.offer(line(i));
+            }
+        });
+        producer.start();
+
+        final List<LogLine> drained = new ArrayList<>();
+        while (producer.isAlive() || !buffer.isEmpty()) {
+            buffer.drainTo(drained, 5);
+        }
+
+        assertEquals(lines, drained.size() + buffer.takeDropped());
+        int previous = -1;
+        for (final LogLine line : drained) {
+            final int current = Integer.parseInt(line.text());
+            assertTrue("Lines must stay in order", current > previous);
+            previous = current;
+        }
+    }
+
+    @Test(timeout = 5000)
+    public void testCloseReleasesBlockedProducer() throws Exception {
+        final LogRingBuffer buffer = new LogRingBuffer(2, OverflowStrategy.BLOCK);
+        buffer.offer(line(0));
+        buffer.offer(line(1));
+
+        final Thread producer = new Thread(() -> buffer.offer(line(2)));
+        producer.start();
+        producer.join(200);
+        assertTrue("Producer should block on the full buffer", producer.isAlive());
+
+        buffer.close();
+        producer.join();
+
+        final List<LogLine> drained = new ArrayList<>();
+        buffer.drainTo(drained, 10);
+        assertEquals(texts(0, 2), texts(drained));
+        assertEquals(1, buffer.takeDropped());
+    }
+
+    @Test
+    public void testClosedBufferDropsLines() {
+        final LogRingBuffer buffer = new LogRingBuffer(4, OverflowStrategy.DROP_OLDEST);
+        buffer.offer(line(0));
+        buffer.close();
+        buffer.offer(line(1));
+
+        final List<LogLine> drained = new ArrayList<>();
+        buffer.drainTo(drained, 10);
+        assertEquals(texts(0, 1), texts(drained));
+        assertEquals(1, buffer.takeDropped());
+    }
+
+    private static LogLine line(final int number) {
+        return new LogLine("component", LogLine.Stream.STDOUT, number, (number + "\n").getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static List<String> texts(final int from, final int to) {
+        final List<String> texts = new ArrayList<>();
+        for (int i = from; i < to; i++) {
+            texts.add(String.valueOf(i));
+        }
+        return texts;
+    }
+
+    private static List<String> texts(final List<LogLine> lines) {
+        final List<String> texts = new ArrayList<>();
+        lines.forEach(line -> texts.add(line.text()));
+        return texts;
+    }
+}
@@ -0,0 +1,244 @@
+package fabzo.kraken.utils;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.Driver;
+import java.sql.DriverManager;
+import java.sql.DriverPropertyInfo;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PooledDataSourceTest {
+    private static final String URL = "jdbc:kraken-stub:test";
+    private static final StubDriver DRIVER = new StubDriver();
+
+    private PooledDataSource dataSource;
+
+    @BeforeClass
+    public static void registerDriver() throws SQLException {
+        DriverManager.registerDriver(DRIVER);
+    }
+
+    @AfterClass
+    public static void deregisterDriver() throws SQLException {
+        DriverManager.deregisterDriver(DRIVER);
+    }
+
+    @Before
+    public void setUp() {
+        DRIVER.opened.clear();
+        dataSource = new PooledDataSource(URL, new Properties(), 1);
+    }
+
+    @After
+    public void tearDown() {
+        dataSource.close();
+    }
+
+    @Test
+    public void testReusesIdleConnection() throws Exception {
+        dataSource.getConnection().close();
+        dataSource.getConnection().close();
+
+        assertEquals(1, DRIVER.opened.size());
+        assertFalse(DRIVER.opened.get(0).closed);
+    }
+
+    @Test
+    public void testClosedConnectionCannotBeUsed() throws Exception {
+        final Connection connection = dataSource.getConnection();
+        connection.close();
+
+        assertTrue(connection.isClosed());
+        try {
+            connection.createStatement();
+            fail("Expected the returned connection to be unusable");
+        } catch (final SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testBorrowingBeyondSizeBlocksUntilReleased() throws Exception {
+        final Connection first = dataSource.getConnection();
+        final CompletableFuture<Connection> second = CompletableFuture.supplyAsync(() -> {
+            try {
+                return dataSource.getConnection();
+            } catch (final SQLException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+
+        try {
+            second.get(200, TimeUnit.MILLISECONDS);
+            fail("Expected the second borrower to wait for the first connection");
+        } catch (final TimeoutException e) {
+            // expected
+        }
+
+        first.close();
+        second.get(5, TimeUnit.SECONDS).close();
+
+        assertEquals(1, DRIVER.opened.size());
+    }
+
+    @Test
+    public void testBorrowingFailsOnceLoginTimeoutPassed() throws Exception {
+        dataSource.setLoginTimeout(0);
+        final Connection first = dataSource.getConnection();
+
+        try {
+            dataSource.getConnection();
+            fail("Expected no connection to be available");
+        } catch (final SQLException e) {
+            // expected
+        }
+
+        first.close();
+        dataSource.getConnection().close();
+    }
+
+    @Test
+    public void testDropsInvalidConnections() throws Exception {
+        dataSource.getConnection().close();
+        DRIVER.opened.get(0).valid = false;
+
+        dataSource.getConnection().close();
+
+        assertEquals(2, DRIVER.opened.size());
+        assertTrue(DRIVER.opened.get(0).closed);
+        assertFalse(DRIVER.opened.get(1).closed);
+    }
+
+    @Test
+    public void testRollsBackOpenTransactionOnReturn() throws Exception {
+        final Connection connection = dataSource.getConnection();
+        connection.setAutoCommit(false);
+        connection.close();
+
+        final StubConnection stub = DRIVER.opened.get(0);
+        assertEquals(1, stub.rollbacks);
+        assertTrue(stub.autoCommit);
+        assertFalse(stub.closed);
+    }
+
+    @Test
+    public void testClosesConnectionsReturnedAfterClose() throws Exception {
+        final Connection borrowed = dataSource.getConnection();
+
+        dataSource.close();
+        borrowed.close();
+
+        assertTrue(DRIVER.opened.get(0).closed);
+        try {
+            dataSource.getConnection();
+            fail("Expected the closed data source to reject borrowers");
+        } catch (final SQLException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testCloseClosesIdleConnections() throws Exception {
+        dataSource.warm();
+
+        dataSource.close();
+
+        assertEquals(1, DRIVER.opened.size());
+        assertTrue(DRIVER.opened.get(0).closed);
+    }
+
+    private static class StubConnection {
+        private volatile boolean valid = true;
+        private volatile boolean closed = false;
+        private volatile boolean autoCommit = true;
+        private volatile int rollbacks = 0;
+
+        Connection proxy() {
+            return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                    (proxy, method, args) -> {
+                        switch (method.getName()) {
+                            case "isValid":
+                                return valid && !closed;
+                            case "isClosed":
+                                return closed;
+                            case "close":
+                                closed = true;
+                                return null;
+                            case "getAutoCommit":
+                                return autoCommit;
+                            case "setAutoCommit":
+                                autoCommit = (Boolean) args[0];
+                                return null;
+                            case "rollback":
+                                rollbacks++;
+                                return null;
+                            default:
+                                throw new SQLFeatureNotSupportedException(method.getName());
+                        }
+                    });
+        }
+    }
+
+    private static class StubDriver implements Driver {
+        private final List<StubConnection> opened = new CopyOnWriteArrayList<>();
+
+        @Override
+        public Connection connect(final String url, final Properties info) {
+            if (!acceptsURL(url)) {
+                return null;
+            }
+            final StubConnection connection = new StubConnection();
+            opened.add(connection);
+            return connection.proxy();
+        }
+
+        @Override
+        public boolean acceptsURL(final String url) {
+            return url.startsWith("jdbc:kraken-stub:");
+        }
+
+        @Override
+        public DriverPropertyInfo[] getPropertyInfo(final String url, final Properties info) {
+            return new DriverPropertyInfo[0];
+        }
+
+        @Override
+        public int getMajorVersion() {
+            return 1;
+        }
+
+        @Override
+        public int getMinorVersion() {
+            return 0;
+        }
+
+        @Override
+        public boolean jdbcCompliant() {
+            return false;
+        }
+
+        @Override
+        public Logger getParentLogger() throws SQLFeatureNotSupportedException {
+            throw new SQLFeatureNotSupportedException();
+        }
+    }
+}
@@ -0,0 +1,108 @@
+package fabzo.kraken.utils;
+
+import io.vavr.collection.HashSet;
+import io.vavr.collection.List;
+import io.vavr.collection.Set;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PortAllocatorTest {
+    private static final PortRange RANGE = PortRange.of(40000, 40009);
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testAllocatesDistinctPortsWithinRange() throws Exception {
+        final PortAllocator allocator = new PortAllocator(lockFile());
+
+        Set<Integer> ports = HashSet.empty();
+        for (int i = 0; i < RANGE.size(); i++) {
+            final int port = allocator.allocate(List.of(RANGE));
+            assertTrue("Port " + port + " outside of " + RANGE, port >= RANGE.from() && port <= RANGE.to());
+            assertTrue(allocator.isAllocated(port));
+            ports = ports.add(port);
+        }
+
+        assertEquals(RANGE.size(), ports.size());
+    }
+
+    @Test
+    public void testFailsWhenRangesAreExhausted() throws Exception {
+        final PortAllocator allocator = new PortAllocator(lockFile());
+        final PortRange single = PortRange.of(40100, 40100);
+        allocator.allocate(List.of(single));
+
+        try {
+            allocator.allocate(List.of(single));
+            fail("Expected the range to be exhausted");
+        } catch (final IllegalStateException e) {
+            assertTrue(e.getMessage().startsWith("No port available"));
+        }
+    }
+
+    @Test
+    public void testFallsBackToNextRange() throws Exception {
+        final PortAllocator allocator = new PortAllocator(lockFile());
+        final PortRange first = PortRange.of(40200, 40200);
+        final PortRange second = PortRange.of(40300, 40300);
+
+        assertEquals(40200, allocator.allocate(List.of(first, second)));
+        assertEquals(40300, allocator.allocate(List.of(first, second)));
+    }
+
+    @Test
+    public void testReleasedPortCanBeAllocatedAgain() throws Exception {
+        final PortAllocator allocator = new PortAllocator(lockFile());
+        final PortRange single = PortRange.of(40400, 40400);
+
+        final int port = allocator.allocate(List.of(single));
+        allocator.release(port);
+
+        assertFalse(allocator.isAllocated(port));
+        assertEquals(port, allocator.allocate(List.of(single)));
+    }
+
+    @Test
+    public void testReservedPortIsNotAllocated() throws Exception {
+        final PortAllocator allocator = new PortAllocator(lockFile());
+        final PortRange range = PortRange.of(40500, 40501);
+
+        assertTrue(allocator.reserve(40500));
+        assertFalse(allocator.reserve(40500));
+        assertEquals(40501, allocator.allocate(List.of(range)));
+
+        allocator.release(40500);
+        assertEquals(40500, allocator.allocate(List.of(range)));
+    }
+
+    @Test
+    public void testAllocatorsSharingLockFileDoNotHandOutSamePort() throws Exception {
+        final Path lockFile = lockFile();
+        final PortAllocator first = new PortAllocator(lockFile);
+        final PortAllocator second = new PortAllocator(lockFile);
+        final PortRange range = PortRange.of(40600, 40601);
+
+        final int port = first.allocate(List.of(range));
+        final int other = second.allocate(List.of(range));
+        assertTrue(port != other);
+
+        // Reserving also takes the lock, the other allocator has to skip the port
+        first.release(port);
+        second.release(other);
+        assertTrue(first.reserve(40600));
+        assertEquals(40601, second.allocate(List.of(range)));
+    }
+
+    private Path lockFile() {
+        return folder.getRoot().toPath().resolve("ports.lock");
+    }
+}
@@ -0,0 +1,109 @@
+package fabzo.kraken.utils;
+
+import io.vavr.control.Option;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ResourceOwnerTest {
+    private static final ResourceOwner OWNER = ResourceOwner.current();
+    private static final Option<Duration> MAX_AGE = Option.of(Duration.ofHours(1));
+    private static final long TWO_HOURS_AGO = System.currentTimeMillis() - TimeUnit.HOURS.toMillis(2);
+
+    @Test
+    public void testLabelsIdentifyTheCurrentProcess() {
+        final io.vavr.collection.Map<String, String> labels = OWNER.labels("salt");
+
+        assertEquals(Option.of("salt"), labels.get(ResourceOwner.LABEL_SALT));
+        assertEquals(Option.of(OWNER.pid()), labels.get(ResourceOwner.LABEL_OWNER_PID));
+        assertEquals(Option.of(OWNER.host()), labels.get(ResourceOwner.LABEL_OWNER_HOST));
+        assertTrue(labels.values().forAll(value -> value.matches("[A-Za-z0-9]([A-Za-z0-9._-]{0,61}[A-Za-z0-9])?")));
+    }
+
+    @Test
+    public void testOwnResourcesAreNeverOrphaned() {
+        final Map<String, String> labels = OWNER.labels("salt").toJavaMap();
+        labels.put(ResourceOwner.LABEL_CREATED, String.valueOf(TWO_HOURS_AGO));
+
+        assertFalse(OWNER.isOrphaned(labels, MAX_AGE));
+    }
+
+    @Test
+    public void testResourcesWithoutOwnerAreNeverOrphaned() {
+        assertFalse(OWNER.isOrphaned(null, MAX_AGE));
+        assertFalse(OWNER.isOrphaned(new HashMap<>(), MAX_AGE));
+        assertFalse(OWNER.isOrphaned(labels(null, OWNER.host(), TWO_HOURS_AGO), MAX_AGE));
+        assertFalse(OWNER.isOrphaned(labels(deadPid(), null, TWO_HOURS_AGO), MAX_AGE));
+    }
+
+    @Test
+    public void testResourcesOfDeadProcessOnThisHostAreOrphaned() throws Exception {
+        assertTrue(OWNER.isOrphaned(labels(deadPid(), OWNER.host(), System.currentTimeMillis()), Option.none()));
+    }
+
+    @Test
+    public void testResourcesOfLiveProcessOnThisHostAreKept() {
+        assertFalse(OWNER.isOrphaned(labels("1", OWNER.host(), System.currentTimeMillis()), MAX_AGE));
+    }
+
+    @Test
+    public void testResourcesOfOtherHostsAreKeptUntilMaxAge() {
+        final String pid = deadPid();
+
+        assertFalse(OWNER.isOrphaned(labels(pid, "other-host", System.currentTimeMillis()), MAX_AGE));
+        assertFalse(OWNER.isOrphaned(labels(pid, "other-host", TWO_HOURS_AGO), Option.none()));
+        assertTrue(OWNER.isOrphaned(labels(pid, "other-host", TWO_HOURS_AGO), MAX_AGE));
+    }
+
+    @Test
+    public void testExpiredResourcesOfLiveProcessAreOrphaned() {
+        assertTrue(OWNER.isOrphaned(labels("1", OWNER.host(), TWO_HOURS_AGO), MAX_AGE));
+    }
+
+    @Test
+    public void testInvalidCreationTimeNeverExpires() {
+        final Map<String, String> labels = labels("1", "other-host", TWO_HOURS_AGO);
+        labels.put(ResourceOwner.LABEL_CREATED, "yesterday");
+
+        assertFalse(OWNER.isOrphaned(labels, MAX_AGE));
+    }
+
+    private static Map<String, String> labels(final String pid, final String host, final long created) {
+        final Map<String, String> labels = new HashMap<>();
+        if (pid != null) {
+            labels.put(ResourceOwner.LABEL_OWNER_PID, pid);
+        }
+        if (host != null) {
+            labels.put(ResourceOwner.LABEL_OWNER_HOST, host);
+        }
+        labels.put(ResourceOwner.LABEL_CREATED, String.valueOf(created));
+        return labels;
+    }
+
+    /**
+     * Pid of a process that already exited.
+     */
+    private static String deadPid() {
+        try {
+            final Process process = new ProcessBuilder("sh", "-c", "echo $$").start();
+            final String pid;
+            try (final BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream(), StandardCharsets.US_ASCII))) {
+                pid = reader.readLine().trim();
+            }
+            process.waitFor(5, TimeUnit.SECONDS);
+            return pid;
+        } catch (final Exception e) {
+            throw new IllegalStateException("Failed to determine the pid of an exited process", e);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package fabzo.kraken.wait;
+
+import com.sun.net.httpserver.HttpServer;
+import fabzo.kraken.EnvironmentContext;
+import fabzo.kraken.components.DockerComponent;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class HTTPWaitTest {
+    private static final Duration AT_MOST = Duration.ofMillis(500);
+
+    private HttpServer server;
+    private EnvironmentContext ctx;
+    private volatile int status = 200;
+    private volatile String body = "";
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/", exchange -> {
+            final byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+            try (final OutputStream output = exchange.getResponseBody()) {
+                output.write(bytes);
+            }
+        });
+        server.start();
+
+        ctx = new EnvironmentContext("test");
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+        ctx.readiness().close();
+        ctx.logs().close();
+    }
+
+    @Test
+    public void testExpectsSuccessfulStatusByDefault() {
+        status = 204;
+        assertTrue(await(HTTPWait.on(url(), AT_MOST)));
+
+        status = 503;
+        assertFalse(await(HTTPWait.on(url(), AT_MOST)));
+    }
+
+    @Test
+    public void testMatchesStatusCode() {
+        status = 401;
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withStatusCode(401)));
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withStatusCode(200)));
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withStatusCode(code -> code < 500)));
+    }
+
+    @Test
+    public void testMatchesBodyText() {
+        body = "{\"status\":\"UP\"}";
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withBodyContaining("\"UP\"")));
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withBodyContaining("DOWN")));
+    }
+
+    @Test
+    public void testOnlyMatchesBodyTextWithinMaxBodySize() {
+        body = repeat('x', 20000) + "ready";
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withBodyContaining("ready")));
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withBodyContaining("ready").withMaxBodySize(20000)));
+    }
+
+    @Test
+    public void testMatchesBodyTextAcrossReads() {
+        // The text spans the boundary of the initial read buffer
+        body = repeat('x', 8190) + "ready";
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withBodyContaining("ready")));
+    }
+
+    @Test
+    public void testMatchesJsonPointer() {
+        body = "{\"status\":\"UP\",\"checks\":[{\"name\":\"db\",\"status\":\"DOWN\"}]}";
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withJsonPath("/status", "UP")));
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withJsonPath("/checks/0/status", "DOWN")));
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withJsonPath("/checks/0/status", "UP")));
+    }
+
+    @Test
+    public void testMatchesJsonPath() {
+        body = "{\"status\":\"UP\",\"checks\":[{\"name\":\"db\",\"status\":\"DOWN\"}]}";
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withJsonPath("$.status", "UP")));
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withJsonPath("$.checks[0].name", "db")));
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withJsonPath("$.checks", node -> node.size() == 1)));
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withJsonPath("$.missing", "UP")));
+    }
+
+    @Test
+    public void testRequiresAllPredicates() {
+        body = "{\"status\":\"UP\",\"version\":\"1.2\"}";
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withBodyContaining("version").withJsonPath("$.status", "UP")));
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withBodyContaining("missing").withJsonPath("$.status", "UP")));
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withJsonPath("$.status", "UP").withJsonPath("$.version", "2.0")));
+    }
+
+    @Test
+    public void testRejectsInvalidJson() {
+        body = "not json";
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withJsonPath("$.status", "UP")));
+    }
+
+    @Test
+    public void testRejectsJsonTruncatedByMaxBodySize() {
+        body = "{\"padding\":\"" + repeat('x', 100) + "\",\"status\":\"UP\"}";
+        assertTrue(await(HTTPWait.on(url(), AT_MOST).withJsonPath("$.status", "UP")));
+        assertFalse(await(HTTPWait.on(url(), AT_MOST).withJsonPath("$.status", "UP").withMaxBodySize(64)));
+    }
+
+    private boolean await(final HTTPWait wait) {
+        return wait.execute(ctx, DockerComponent.create().withName("web"));
+    }
+
+    private String url() {
+        return "http://127.0.0.1:" + server.getAddress().getPort() + "/health";
+    }
+
+    private static String repeat(final char character, final int count) {
+        final StringBuilder builder = new StringBuilder(count);
+        for (int i = 0; i < count; i++) {
+            builder.append(character);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,163 @@
+package fabzo.kraken.wait;
+
+import io.vavr.control.Option;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class HandshakesTest {
+    private static final Option<Boolean> UNDECIDED = Option.none();
+    private static final Option<Boolean> READY = Option.of(true);
+    private static final Option<Boolean> NOT_READY = Option.of(false);
+
+    @Test
+    public void testGreeting() {
+        assertEquals(UNDECIDED, respond(Handshakes.greeting(), new byte[0]));
+        assertEquals(READY, respond(Handshakes.greeting(), new byte[]{1}));
+    }
+
+    @Test
+    public void testMysqlInitialHandshake() {
+        final byte[] greeting = {0x4a, 0x00, 0x00, 0x00, 0x0a, '5', '.', '7', 0x00};
+
+        assertFragmented(Handshakes.mysql(), greeting, 5, READY);
+    }
+
+    @Test
+    public void testMysqlErrorPacket() {
+        final byte[] error = {0x17, 0x00, 0x00, 0x00, (byte) 0xff, 0x6a, 0x04};
+
+        assertFragmented(Handshakes.mysql(), error, 5, NOT_READY);
+    }
+
+    @Test
+    public void testPostgresAuthenticationRequest() {
+        final byte[] authentication = {'R', 0, 0, 0, 8, 0, 0, 0, 5};
+
+        assertFragmented(Handshakes.postgres("test"), authentication, 5, READY);
+    }
+
+    @Test
+    public void testPostgresStartingUp() {
+        final byte[] error = postgresError("FATAL", "57P03", "the database system is starting up");
+
+        assertFragmented(Handshakes.postgres("test"), error, error.length, NOT_READY);
+    }
+
+    @Test
+    public void testPostgresOtherErrorsMeanReady() {
+        final byte[] error = postgresError("FATAL", "28000", "role \"test\" does not exist");
+
+        assertFragmented(Handshakes.postgres("test"), error, error.length, READY);
+    }
+
+    @Test
+    public void testPostgresUnexpectedMessage() {
+        assertEquals(NOT_READY, respond(Handshakes.postgres("test"), new byte[]{'N', 0, 0, 0, 4}));
+    }
+
+    @Test
+    public void testPostgresMalformedErrorIsDecidedWithoutFailing() {
+        // The fields are not null terminated within the announced length
+        final byte[] error = {'E', 0, 0, 0, 10, 'C', '5', '7', 'P', '0', '3'};
+        assertEquals(READY, respond(Handshakes.postgres("test"), error));
+
+        // A length smaller than the length field itself
+        assertEquals(NOT_READY, respond(Handshakes.postgres("test"), new byte[]{'E', 0, 0, 0, 0}));
+        assertEquals(NOT_READY, respond(Handshakes.postgres("test"), new byte[]{'E', (byte) 0xff, (byte) 0xff, (byte) 0xff, (byte) 0xff}));
+    }
+
+    @Test
+    public void testPostgresStartupMessage() {
+        final ByteBuffer request = Handshakes.postgres("test").request();
+
+        assertEquals(request.remaining(), request.getInt(0));
+        assertEquals(196608, request.getInt(4));
+    }
+
+    @Test
+    public void testRedisPong() {
+        assertFragmented(Handshakes.redis(), ascii("+PONG\r\n"), 7, READY);
+    }
+
+    @Test
+    public void testRedisRequiringAuthentication() {
+        assertFragmented(Handshakes.redis(), ascii("-NOAUTH Authentication required.\r\n"), 34, READY);
+    }
+
+    @Test
+    public void testRedisLoading() {
+        assertFragmented(Handshakes.redis(), ascii("-LOADING Redis is loading the dataset in memory\r\n"), 49, NOT_READY);
+    }
+
+    @Test
+    public void testKafkaApiVersions() {
+        final ByteBuffer request = Handshakes.kafka().request();
+        final int correlationId = request.getInt(8);
+
+        final ByteBuffer response = ByteBuffer.allocate(10);
+        response.putInt(6).putInt(correlationId).putShort((short) 0);
+        assertFragmented(Handshakes.kafka(), response.array(), 10, READY);
+    }
+
+    @Test
+    public void testKafkaError() {
+        final int correlationId = Handshakes.kafka().request().getInt(8);
+
+        final ByteBuffer error = ByteBuffer.allocate(10);
+        error.putInt(6).putInt(correlationId).putShort((short) 35);
+        assertEquals(NOT_READY, respond(Handshakes.kafka(), error.array()));
+
+        final ByteBuffer otherRequest = ByteBuffer.allocate(10);
+        otherRequest.putInt(6).putInt(correlationId + 1).putShort((short) 0);
+        assertEquals(NOT_READY, respond(Handshakes.kafka(), otherRequest.array()));
+    }
+
+    @Test
+    public void testDecisionIgnoresBytesBeforeThePosition() {
+        final ByteBuffer received = ByteBuffer.wrap(ascii("xx+PONG\r\n"));
+        received.position(2);
+
+        assertEquals(READY, Handshakes.redis().response(received));
+    }
+
+    @Test
+    public void testRequestCanBeSentRepeatedly() {
+        final Handshake handshake = Handshakes.redis();
+        final ByteBuffer first = handshake.request();
+        first.position(first.limit());
+
+        assertEquals(ascii("*1\r\n$4\r\nPING\r\n").length, handshake.request().remaining());
+    }
+
+    /**
+     * Feeds the reply byte by byte as the prober would receive it in fragments, the
+     * handshake must stay undecided until enough bytes have been received.
+     */
+    private static void assertFragmented(final Handshake handshake, final byte[] reply, final int decidedAt, final Option<Boolean> decision) {
+        for (int length = 0; length < decidedAt; length++) {
+            assertEquals("Decided after " + length + " bytes", UNDECIDED, respond(handshake, java.util.Arrays.copyOf(reply, length)));
+        }
+        for (int length = decidedAt; length <= reply.length; length++) {
+            assertEquals("Decision after " + length + " bytes", decision, respond(handshake, java.util.Arrays.copyOf(reply, length)));
+        }
+    }
+
+    private static Option<Boolean> respond(final Handshake handshake, final byte[] received) {
+        return handshake.response(ByteBuffer.wrap(received));
+    }
+
+    private static byte[] postgresError(final String severity, final String code, final String message) {
+        final byte[] fields = ("S" + severity + "\0C" + code + "\0M" + message + "\0\0").getBytes(StandardCharsets.US_ASCII);
+        final ByteBuffer error = ByteBuffer.allocate(5 + fields.length);
+        error.put((byte) 'E').putInt(4 + fields.length).put(fields);
+        return error.array();
+    }
+
+    private static byte[] ascii(final String text) {
+        return text.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,116 @@
+package fabzo.kraken.wait;
+
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LogPatternMatcherTest {
+
+    @Test
+    public void testMatchesLineByLine() {
+        final LogPatternMatcher matcher = matcher("ready for connections", 1);
+
+        write(matcher, "starting\nmysqld: ready for connections.\n");
+
+        assertTrue(matcher.matched().isDone());
+    }
+
+    @Test
+    public void testDoesNotMatchAcrossLines() {
+        final LogPatternMatcher matcher = matcher("ready for", 1);
+
+        write(matcher, "ready\nfor\n");
+
+        assertFalse(matcher.matched().isDone());
+    }
+
+    @Test
+    public void testMatchesLinesSplitAcrossWrites() {
+        final LogPatternMatcher matcher = matcher("ready for connections", 1);
+
+        write(matcher, "mysqld: rea");
+        write(matcher, "dy for conn");
+        assertFalse(matcher.matched().isDone());
+        write(matcher, "ections\n");
+
+        assertTrue(matcher.matched().isDone());
+    }
+
+    @Test
+    public void testCountsOccurrences() {
+        final LogPatternMatcher matcher = matcher("ready", 3);
+
+        write(matcher, "ready\nready\n");
+        assertFalse(matcher.matched().isDone());
+        write(matcher, "ready\n");
+
+        assertTrue(matcher.matched().isDone());
+    }
+
+    @Test
+    public void testCountsOccurrencesWithinALine() {
+        final LogPatternMatcher matcher = matcher("ready", 2);
+
+        write(matcher, "ready ready\n");
+
+        assertTrue(matcher.matched().isDone());
+    }
+
+    @Test
+    public void testMatchesOverlyLongLinesInChunks() {
+        final LogPatternMatcher matcher = matcher("ready", 1);
+        final byte[] filler = new byte[200 * 1024];
+        Arrays.fill(filler, (byte) 'x');
+
+        matcher.write(filler, 0, filler.length);
+        write(matcher, "ready");
+        assertFalse(matcher.matched().isDone());
+        write(matcher, "\n");
+
+        assertTrue(matcher.matched().isDone());
+    }
+
+    @Test
+    public void testMatchesLastLineWithoutLineBreakOnClose() {
+        final LogPatternMatcher matcher = matcher("ready", 1);
+
+        write(matcher, "ready");
+        assertFalse(matcher.matched().isDone());
+        matcher.close();
+
+        assertTrue(matcher.matched().isDone());
+        assertFalse(matcher.matched().isCompletedExceptionally());
+    }
+
+    @Test
+    public void testFailsWhenTheLogEndsWithoutMatch() throws Exception {
+        final LogPatternMatcher matcher = matcher("ready", 2);
+
+        write(matcher, "ready\nshutting down\n");
+        matcher.close();
+
+        try {
+            matcher.matched().get();
+            fail("Expected the matcher to fail");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IllegalStateException);
+            assertTrue(e.getCause().getMessage(), e.getCause().getMessage().contains("after 1 of 2"));
+        }
+    }
+
+    private static LogPatternMatcher matcher(final String regex, final int occurrences) {
+        return new LogPatternMatcher(Pattern.compile(regex), occurrences);
+    }
+
+    private static void write(final LogPatternMatcher matcher, final String text) {
+        final byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        matcher.write(bytes, 0, bytes.length);
+    }
+}
@@ -0,0 +1,141 @@
+package fabzo.kraken.wait;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ReadinessSchedulerTest {
+    private final ReadinessScheduler readiness = new ReadinessScheduler(2);
+
+    @After
+    public void tearDown() {
+        readiness.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testIntervalGrowsBetweenAttempts() throws Exception {
+        final List<Long> attempts = new CopyOnWriteArrayList<>();
+        final Probe probe = timeout -> {
+            attempts.add(System.nanoTime());
+            return CompletableFuture.completedFuture(attempts.size() == 5);
+        };
+        final RetryPolicy policy = RetryPolicy.create()
+                .withInitialInterval(Duration.ofMillis(25))
+                .withMultiplier(2)
+                .withJitter(0)
+                .withMaxInterval(Duration.ofSeconds(1));
+
+        assertTrue(readiness.poll(probe, policy, Duration.ofSeconds(5)).get());
+
+        assertEquals(5, attempts.size());
+        final long first = attempts.get(1) - attempts.get(0);
+        final long last = attempts.get(4) - attempts.get(3);
+        assertTrue(first >= TimeUnit.MILLISECONDS.toNanos(25));
+        assertTrue(first < TimeUnit.MILLISECONDS.toNanos(150));
+        assertTrue(last >= TimeUnit.MILLISECONDS.toNanos(200));
+    }
+
+    @Test(timeout = 10000)
+    public void testHangingAttemptIsCutOffByAttemptTimeout() throws Exception {
+        final CompletableFuture<Boolean> hanging = new CompletableFuture<>();
+        final AtomicInteger attempts = new AtomicInteger();
+        final Probe probe = timeout -> attempts.incrementAndGet() == 1
+                ? hanging
+                : CompletableFuture.completedFuture(true);
+        final RetryPolicy policy = RetryPolicy.create()
+                .withInitialInterval(Duration.ofMillis(10))
+                .withAttemptTimeout(Duration.ofMillis(100));
+
+        final long start = System.nanoTime();
+        assertTrue(readiness.poll(probe, policy, Duration.ofMinutes(1)).get());
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        assertFalse(hanging.get());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testFailsAtTheDeadline() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final Probe probe = timeout -> {
+            attempts.incrementAndGet();
+            return CompletableFuture.completedFuture(false);
+        };
+        final RetryPolicy policy = RetryPolicy.create().withInitialInterval(Duration.ofMillis(20));
+
+        final long start = System.nanoTime();
+        assertFalse(readiness.poll(probe, policy, Duration.ofMillis(300)).get());
+        final long elapsed = System.nanoTime() - start;
+
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(300));
+        assertTrue(elapsed < TimeUnit.SECONDS.toNanos(2));
+        assertTrue(attempts.get() >= 2);
+    }
+
+    @Test(timeout = 10000)
+    public void testFailingProbeCountsAsFailedAttempt() throws Exception {
+        final AtomicInteger attempts = new AtomicInteger();
+        final Probe probe = timeout -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("connection refused");
+            }
+            return CompletableFuture.completedFuture(true);
+        };
+
+        assertTrue(readiness.poll(probe, RetryPolicy.create().withInitialInterval(Duration.ofMillis(10)), Duration.ofSeconds(5)).get());
+        assertEquals(2, attempts.get());
+    }
+
+    @Test(timeout = 10000)
+    public void testCancellingReleasesTheAttemptInProgress() throws Exception {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CompletableFuture<Boolean> hanging = new CompletableFuture<>();
+        final AtomicInteger attempts = new AtomicInteger();
+        final Probe probe = timeout -> {
+            attempts.incrementAndGet();
+            started.countDown();
+            return hanging;
+        };
+        final RetryPolicy policy = RetryPolicy.create()
+                .withInitialInterval(Duration.ofMillis(10))
+                .withAttemptTimeout(Duration.ofMinutes(1));
+
+        final CompletableFuture<Boolean> result = readiness.poll(probe, policy, Duration.ofMinutes(1));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+
+        result.cancel(false);
+
+        try {
+            hanging.get(5, TimeUnit.SECONDS);
+        } catch (final CancellationException e) {
+            // expected
+        }
+        assertTrue(hanging.isCancelled());
+        Thread.sleep(100);
+        assertEquals(1, attempts.get());
+    }
+
+    @Test
+    public void testCloseCancelsOutstandingWaitsAndIsIdempotent() {
+        final ReadinessScheduler readiness = new ReadinessScheduler(1);
+        final CompletableFuture<Boolean> result = readiness.poll(
+                timeout -> CompletableFuture.completedFuture(false), RetryPolicy.create(), Duration.ofMinutes(1));
+
+        readiness.close();
+        readiness.close();
+
+        assertTrue(result.isCancelled());
+    }
+}
@@ -0,0 +1,98 @@
+package fabzo.kraken.wait;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class RetryPolicyTest {
+
+    @Test
+    public void testIntervalGrowsExponentiallyWithoutJitter() {
+        final RetryPolicy policy = RetryPolicy.create()
+                .withInitialInterval(Duration.ofMillis(100))
+                .withMaxInterval(Duration.ofSeconds(10))
+                .withMultiplier(2.0)
+                .withJitter(0.0);
+
+        assertEquals(Duration.ofMillis(100), policy.interval(0));
+        assertEquals(Duration.ofMillis(200), policy.interval(1));
+        assertEquals(Duration.ofMillis(400), policy.interval(2));
+        assertEquals(Duration.ofMillis(800), policy.interval(3));
+    }
+
+    @Test
+    public void testIntervalIsCappedAtMaximum() {
+        final RetryPolicy policy = RetryPolicy.create()
+                .withInitialInterval(Duration.ofMillis(100))
+                .withMaxInterval(Duration.ofMillis(500))
+                .withJitter(0.0);
+
+        assertEquals(Duration.ofMillis(500), policy.interval(3));
+        assertEquals(Duration.ofMillis(500), policy.interval(1000));
+    }
+
+    @Test
+    public void testMultiplierOfOneKeepsIntervalConstant() {
+        final RetryPolicy policy = RetryPolicy.create()
+                .withInitialInterval(Duration.ofMillis(300))
+                .withMultiplier(1.0)
+                .withJitter(0.0);
+
+        assertEquals(Duration.ofMillis(300), policy.interval(0));
+        assertEquals(Duration.ofMillis(300), policy.interval(10));
+    }
+
+    @Test
+    public void testJitterStaysWithinBounds() {
+        final RetryPolicy policy = RetryPolicy.create()
+                .withInitialInterval(Duration.ofMillis(1000))
+                .withMaxInterval(Duration.ofSeconds(10))
+                .withJitter(0.2);
+
+        long min = Long.MAX_VALUE;
+        long max = Long.MIN_VALUE;
+        for (int i = 0; i < 10000; i++) {
+            final long interval = policy.interval(0).toMillis();
+            min = Math.min(min, interval);
+            max = Math.max(max, interval);
+        }
+
+        assertTrue("Shortest interval " + min, min >= 800);
+        assertTrue("Longest interval " + max, max <= 1200);
+        // Intervals are actually randomized across the whole range
+        assertTrue("Shortest interval " + min, min < 850);
+        assertTrue("Longest interval " + max, max > 1150);
+    }
+
+    @Test
+    public void testJitterDoesNotExceedMaximum() {
+        final RetryPolicy policy = RetryPolicy.create()
+                .withInitialInterval(Duration.ofMillis(100))
+                .withMaxInterval(Duration.ofMillis(500))
+                .withJitter(0.5);
+
+        for (int i = 0; i < 10000; i++) {
+            final Duration interval = policy.interval(10);
+            assertTrue("Interval " + interval, interval.compareTo(Duration.ofMillis(500)) <= 0);
+            assertTrue("Interval " + interval, interval.compareTo(Duration.ofMillis(250)) >= 0);
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testMultiplierBelowOneIsRejected() {
+        RetryPolicy.create().withMultiplier(0.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testJitterAboveOneIsRejected() {
+        RetryPolicy.create().withJitter(1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testNegativeJitterIsRejected() {
+        RetryPolicy.create().withJitter(-0.1);
+    }
+}
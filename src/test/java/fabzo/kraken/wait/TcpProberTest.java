@@ -0,0 +1,107 @@
+package fabzo.kraken.wait;
+
+import io.vavr.control.Option;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class TcpProberTest {
+    private ServerSocket server;
+    private Thread acceptor;
+    private TcpProber prober;
+
+    @Before
+    public void setUp() throws Exception {
+        server = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        acceptor = new Thread(() -> {
+            while (!server.isClosed()) {
+                try (final Socket socket = server.accept(); final OutputStream output = socket.getOutputStream()) {
+                    // Greeting sent in two fragments
+                    output.write(new byte[]{0x4a, 0x00, 0x00});
+                    output.flush();
+                    Thread.sleep(20);
+                    output.write(new byte[]{0x00, 0x0a, '5'});
+                    output.flush();
+                    Thread.sleep(100);
+                } catch (final IOException | InterruptedException ignored) {
+                    // Server closed
+                }
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+
+        prober = new TcpProber();
+    }
+
+    @After
+    public void tearDown() throws Exception {
+        prober.close();
+        server.close();
+        acceptor.join(TimeUnit.SECONDS.toMillis(1));
+    }
+
+    @Test
+    public void testConnect() throws Exception {
+        assertTrue(prober.connect(address()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConnectRefused() throws Exception {
+        final int port;
+        try (final ServerSocket closed = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            port = closed.getLocalPort();
+        }
+
+        assertFalse(prober.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port)).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testHandshakeAcrossFragments() throws Exception {
+        assertTrue(prober.exchange(address(), Handshakes.mysql()).get(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testFailingHandshakeOnlyFailsItsAttempt() throws Exception {
+        final CompletableFuture<Boolean> failing = prober.exchange(address(), new Handshake() {
+            @Override
+            public ByteBuffer request() {
+                return ByteBuffer.allocate(0);
+            }
+
+            @Override
+            public Option<Boolean> response(final ByteBuffer received) {
+                throw new IndexOutOfBoundsException("Malformed reply");
+            }
+        });
+
+        try {
+            failing.get(5, TimeUnit.SECONDS);
+            fail("Expected the attempt to fail");
+        } catch (final ExecutionException e) {
+            assertTrue(e.getCause() instanceof IndexOutOfBoundsException);
+        }
+
+        // The selector thread is still running
+        assertTrue(prober.exchange(address(), Handshakes.greeting()).get(5, TimeUnit.SECONDS));
+    }
+
+    private InetSocketAddress address() {
+        return new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getLocalPort());
+    }
+}